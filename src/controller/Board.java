@@ -1,5 +1,7 @@
 package controller;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -35,6 +37,12 @@ public class Board implements Serializable {
     private int height;//棋盘的高
     private int[][] grid;
     private Map<Integer, Block> blocks;
+    private transient MoveMasks moveMasks;
+    private transient long occupancy;
+    private transient long zobristHash;
+    //occupancy用一个long记着哪些格子被占着（规则见MoveMasks），跟着方块的移动一起更新，GameLogic判断能不能走时只拿它做一次与运算
+    //zobristHash是整个棋盘的Zobrist哈希（规则见Zobrist），也是跟着方块的移动一起更新的
+    //这几个不进存档，读档时在readObject()里重新算
     //grid这个数组我准备用来储存每个小格的状态，即每个小格被id为什么的方块占领了
     //Map<>则是用来将每个方块和它的唯一的id对应起来，用Map<>后面要好查找很多
 
@@ -55,6 +63,8 @@ public class Board implements Serializable {
         this.height = height;
         this.grid = new int[height][width];
         this.blocks = new HashMap<>();
+        this.moveMasks = MoveMasks.forSize(width, height);
+        this.occupancy = MoveMasks.WALL;
 
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
@@ -66,6 +76,8 @@ public class Board implements Serializable {
 
     public void initialize() {
         this.blocks.clear();
+        this.occupancy = MoveMasks.WALL;
+        this.zobristHash = 0;
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
                 grid[i][j] = 0;
@@ -99,11 +111,49 @@ public class Board implements Serializable {
         //X指的是10（为了对齐）
     }
 
+    public boolean initializeRandom(int minDistance, int maxDistance, Random random) {
+        Board standard = new Board();
+        SolverBoard template = AISolver.toSolverBoard(standard);
+        if (template == null || width != standard.width || height != standard.height) {
+            return false;
+        }
+        long layout = LayoutGenerator.randomLayout(template, minDistance, maxDistance, random);
+        if (layout < 0) {
+            return false;
+        }
+        Map<Integer, Block> standardBlocks = standard.getBlocksCopy();
+        List<int[]> pieces = new ArrayList<>();
+        for (Block block : standardBlocks.values()) {
+            pieces.add(new int[]{block.getId(), block.getWidth(), block.getHeight()});
+        }
+        List<int[]> placed = LayoutGenerator.place(layout, width, height, pieces, random);
+        if (placed == null) {
+            return false;
+        }
+
+        this.blocks.clear();
+        this.occupancy = MoveMasks.WALL;
+        this.zobristHash = 0;
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                grid[i][j] = 0;
+            }
+        }
+        for (int[] position : placed) {
+            Block block = standardBlocks.get(position[0]);
+            addBlockToBoard(new Block(block.getId(), block.getName(), block.getWidth(), block.getHeight(), position[1], position[2]));
+        }
+        return true;
+    }
+    //和initialize()用同样的10个棋子，但摆成一个离胜利 minDistance 到 maxDistance 步的随机布局（见LayoutGenerator），
+    //没有符合的布局时返回false，这时棋盘不会被改动
+
     private void addBlockToBoard(Block block) {
         if (block == null) {
             return;
         }
         blocks.put(block.getId(), block);
+        updateCells(block, true);
         //在添加到棋盘之前，顺便先让block在创建的Map里面与自己的ID对应起来，现在Map里面的序号和block是对应的
         for (int y = 0; y < block.getHeight(); y++) {
             for (int j = 0; j < block.getWidth(); j++) {
@@ -170,8 +220,10 @@ public class Board implements Serializable {
             }
         }
 
+        updateCells(block, false);
         block.setX(newX);
         block.setY(newY);
+        updateCells(block, true);
 
         //再标记新位置
         for (int i = 0; i < block.getHeight(); i++) {
@@ -187,15 +239,98 @@ public class Board implements Serializable {
     //这个方法非常重要，它是用来移动一个方块的，将方块从某个地方移动到另一个坐标
 
 
+    public BoardSnapshot snapshot() {
+        if (!BoardSnapshot.supports(width, height)) {
+            return null;
+        }
+        BoardSnapshot.Builder builder = new BoardSnapshot.Builder(width, height);
+        for (Block block : blocks.values()) {
+            if (!builder.add(block.getId(), block.getWidth(), block.getHeight(), block.getX(), block.getY())) {
+                return null;
+            }
+        }
+        return builder.build(zobristHash);
+    }
+    //生成一个不可变的快照（见BoardSnapshot），以后这个棋盘再怎么变快照都不会跟着变，棋盘或者方块太大放不进快照时返回null
+
+    public boolean restore(BoardSnapshot snapshot) {
+        if (snapshot == null || snapshot.getWidth() != width || snapshot.getHeight() != height
+                || snapshot.getPieceCount() != blocks.size()) {
+            return false;
+        }
+        for (Block block : blocks.values()) {
+            if (!snapshot.contains(block.getId())) {
+                return false;
+            }
+        }
+        for (int i = 0; i < height; i++) {
+            Arrays.fill(grid[i], EMPTY_CELL_ID);
+        }
+        occupancy = MoveMasks.WALL;
+        zobristHash = 0;
+        for (Block block : blocks.values()) {
+            block.setX(snapshot.getX(block.getId()));
+            block.setY(snapshot.getY(block.getId()));
+            for (int i = 0; i < block.getHeight(); i++) {
+                for (int j = 0; j < block.getWidth(); j++) {
+                    grid[block.getY() + i][block.getX() + j] = block.getId();
+                }
+            }
+            updateCells(block, true);
+        }
+        return true;
+    }
+    //把所有方块一次性摆回快照里的位置（方块对象还是原来那些），快照里的方块和棋盘上的对不上时什么都不改，返回false
+    //不能一个个调用moveBlockOnBoard()，因为中间某一刻两个方块可能会重叠，清掉旧位置时会把别的方块的格子也清掉
+
+    public long getOccupancy() {
+        return occupancy;
+    }
+    //被占着的格子对应的bit是1，MoveMasks.WALL那一位永远是1
+
+    public long getZobristHash() {
+        return zobristHash;
+    }
+    //整个棋盘的64位哈希，不用扫描棋盘，AI、缓存和判断局面重复时可以直接拿它当key用
+    //（不同的局面碰巧哈希一样的可能性极小，但不是0，要完全确定还是用equals()）
+
+    public MoveMasks getMoveMasks() {
+        return moveMasks;
+    }
+    //这个宽高的棋盘对应的表，棋盘太大（超过63个格子）时是null
+
+    private void updateCells(Block block, boolean occupied) {
+        zobristHash ^= Zobrist.blockHash(block.getId(), width, height, block.getWidth(), block.getHeight(), block.getX(), block.getY());
+        if (moveMasks == null) {
+            return;
+        }
+        long mask = moveMasks.blockMask(block.getWidth(), block.getHeight(), block.getX(), block.getY());
+        occupancy = occupied ? occupancy | mask : occupancy & ~mask;
+    }
+    //把一个方块占的格子写进occupancy或者从里面清掉，同时把它那部分Zobrist哈希异或进去（放进和拿走都是异或），只动这个方块自己的几个格子
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        moveMasks = MoveMasks.forSize(width, height);
+        occupancy = MoveMasks.WALL;
+        zobristHash = 0;
+        for (Block block : blocks.values()) {
+            updateCells(block, true);
+        }
+    }
+    //存档里没有occupancy和zobristHash，读档以后按blocks重新算一遍
+
+
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof Board board)) return false;
+        if (zobristHash != board.zobristHash) return false;
         return width == board.width && height == board.height && Objects.deepEquals(grid, board.grid) && Objects.equals(blocks, board.blocks);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(width, height, Arrays.deepHashCode(grid), blocks);
+        return Long.hashCode(zobristHash);
     }
     //重写了equals方法和hashCode方法方便后面实现撤销功能和AI算法中的判断
 
@@ -231,6 +366,9 @@ public class Board implements Serializable {
         for (int i = 0; i < this.height; i++) {
             this.grid[i] = Arrays.copyOf(other.grid[i], this.width);
         }
+        this.moveMasks = other.moveMasks;
+        this.occupancy = other.occupancy;
+        this.zobristHash = other.zobristHash;
     }
 
     // 为实现ai功能添加了一个拷贝构造函数的代码，实现了所有board变量的深拷贝
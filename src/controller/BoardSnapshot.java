@@ -0,0 +1,161 @@
+package controller;
+
+import java.util.Arrays;
+
+/*
+* 这个类是棋盘某一时刻的"快照"，创建以后就不会再变，所以任何线程都可以直接读，不用加锁也不用再拷贝
+* 1.GameLogic每走一步（撤销、重置、读档也一样）就用Board.snapshot()生成一个新的快照，放进一个volatile变量里，
+*   别的线程（AI求解的SwingWorker、定时器、画面）用getSnapshot()拿到的一定是某一步走完以后完整的棋盘
+* 2.每个方块只占12个bit：x(3位)、y(3位)、宽-1(2位)、高-1(2位)，再加1位"这个ID在不在棋盘上"，
+*   ID为id的方块放在第 id-1 个位置上，一个long放5个，"横刀立马"的10个方块一共只要2个long
+* 3.同时记下了生成快照时棋盘的Zobrist哈希，可以直接拿来当缓存的key
+* 4.toSolverBoard()直接从快照搭出AI用的SolverBoard，所以AI不需要再深拷贝GameState
+* 棋盘的宽高不能超过MAX_SIDE，方块的宽高不能超过MAX_BLOCK_SIDE，超出时Board.snapshot()返回null
+ */
+public final class BoardSnapshot {
+    public static final int MAX_SIDE = 8;
+    public static final int MAX_BLOCK_SIDE = 4;
+    private static final int BITS_PER_PIECE = 12;
+    private static final int PIECES_PER_WORD = 64 / BITS_PER_PIECE;
+    private static final int PRESENT = 1 << 10;
+
+    private final int width;
+    private final int height;
+    private final long zobristHash;
+    private final long[] words;
+    //这个数组只在构造时写一次，不会传到外面去，所以整个对象是不可变的
+    private final int pieceCount;
+
+    private BoardSnapshot(int width, int height, long zobristHash, long[] words, int pieceCount) {
+        this.width = width;
+        this.height = height;
+        this.zobristHash = zobristHash;
+        this.words = words;
+        this.pieceCount = pieceCount;
+    }
+
+    public static boolean supports(int width, int height) {
+        return width > 0 && height > 0 && width <= MAX_SIDE && height <= MAX_SIDE;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getZobristHash() {
+        return zobristHash;
+    }
+
+    public int getPieceCount() {
+        return pieceCount;
+    }
+
+    public int getMaxId() {
+        return words.length * PIECES_PER_WORD;
+    }
+    //ID从1到getMaxId()，中间可能有不在棋盘上的（比如被炸弹炸掉的），用contains()判断
+
+    public boolean contains(int id) {
+        return (slot(id) & PRESENT) != 0;
+    }
+
+    public int getX(int id) {
+        return slot(id) & 7;
+    }
+
+    public int getY(int id) {
+        return (slot(id) >>> 3) & 7;
+    }
+
+    public int getBlockWidth(int id) {
+        return ((slot(id) >>> 6) & 3) + 1;
+    }
+
+    public int getBlockHeight(int id) {
+        return ((slot(id) >>> 8) & 3) + 1;
+    }
+    //这几个getter对不在棋盘上的ID没有意义，先用contains()判断
+
+    public int getBlockIdAt(int x, int y) {
+        for (int id = 1; id <= getMaxId(); id++) {
+            int slot = slot(id);
+            if ((slot & PRESENT) != 0) {
+                int blockX = slot & 7;
+                int blockY = (slot >>> 3) & 7;
+                if (x >= blockX && x <= blockX + ((slot >>> 6) & 3) && y >= blockY && y <= blockY + ((slot >>> 8) & 3)) {
+                    return id;
+                }
+            }
+        }
+        return Board.EMPTY_CELL_ID;
+    }
+    //这个格子上是哪个方块，空格返回Board.EMPTY_CELL_ID，要把所有方块看一遍，只适合偶尔用
+
+    public SolverBoard toSolverBoard(int goalX, int goalY) {
+        SolverBoard solverBoard = new SolverBoard(width, height);
+        solverBoard.setGoal(goalX, goalY);
+        for (int id = 1; id <= getMaxId(); id++) {
+            if (contains(id) && !solverBoard.addPiece(id, getBlockWidth(id), getBlockHeight(id), getX(id), getY(id))) {
+                return null;
+            }
+        }
+        return solverBoard;
+    }
+    //把快照里的每个方块放到一块新的SolverBoard上，棋盘太大或者有不认识的方块形状时返回null
+
+    private int slot(int id) {
+        int index = id - 1;
+        if (index < 0 || index >= getMaxId()) {
+            return 0;
+        }
+        return (int) (words[index / PIECES_PER_WORD] >>> (BITS_PER_PIECE * (index % PIECES_PER_WORD))) & ((1 << BITS_PER_PIECE) - 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BoardSnapshot other)) return false;
+        return width == other.width && height == other.height && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(zobristHash);
+    }
+
+    public static class Builder {
+        private final int width;
+        private final int height;
+        private long[] words = new long[2];
+        private int pieceCount;
+
+        public Builder(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        public boolean add(int id, int blockWidth, int blockHeight, int x, int y) {
+            int index = id - 1;
+            if (index < 0 || x < 0 || y < 0 || x >= MAX_SIDE || y >= MAX_SIDE
+                    || blockWidth < 1 || blockHeight < 1 || blockWidth > MAX_BLOCK_SIDE || blockHeight > MAX_BLOCK_SIDE) {
+                return false;
+            }
+            if (index / PIECES_PER_WORD >= words.length) {
+                words = Arrays.copyOf(words, index / PIECES_PER_WORD + 1);
+            }
+            int slot = PRESENT | x | (y << 3) | ((blockWidth - 1) << 6) | ((blockHeight - 1) << 8);
+            words[index / PIECES_PER_WORD] |= ((long) slot) << (BITS_PER_PIECE * (index % PIECES_PER_WORD));
+            pieceCount++;
+            return true;
+        }
+        //ID、位置或者大小放不进12个bit时返回false
+
+        public BoardSnapshot build(long zobristHash) {
+            return new BoardSnapshot(width, height, zobristHash, words.clone(), pieceCount);
+        }
+    }
+    //Board系列的snapshot()用它一个个把方块放进来
+}
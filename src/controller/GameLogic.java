@@ -1,12 +1,15 @@
 package controller;
 
 import java.io.File;
+import java.util.Random;
 
 /*
 *这个类给出了几个主要的方法：
 * 1.selectBlockAt()输入一个grid的坐标，后续可能要和鼠标点击事件结合起来，返回true则有效地点击了某个方块，把方块传输给了变量selectedBlock
 * 2.moveSelectedBlock()这个方法要传入一个Direction，返回true则有效地将某个块进行了移动，并且增加了步数，记录下来这次移动
 * 3.undoLastMove()用来撤销最近的一次移动，返回ture则步数减1，撤销记录里面的最后一次，并且把selectedBlock定为被移动的这个
+* 3.5.redoMove()把刚撤销的那一步再走回来；走过的所有局面（包括撤销以后走出来的别的分支）都记在一棵HistoryTree里，
+*     jumpTo()可以直接跳到树上的任意一个局面，见HistoryTree
 * 4.resetGame()，重置整个游戏
 * 5.checkWinCondition(),返回true则表示胜利
 * 6.留了两个接口，一个AISolver的和一个SoundPlayer的，后续可以补上
@@ -17,9 +20,15 @@ public class GameLogic {
     //另外，其中的board又有isValidCoordinate()、getBlockIdAt()、getBlockById()、getBlocksCopy()、getGridCopy()、moveBlockOnBoard()这几个可能用到的方法
     private Block selectedBlock;
     // 当前选中的方块
+    private volatile BoardSnapshot snapshot;
+    // 最近一次棋盘变化以后的快照，别的线程读棋盘时用它，见getSnapshot()
+    private HistoryTree historyTree;
+    // 走过的所有局面，撤销、重做和跳转都在这棵树上走
 
     public GameLogic() {
         this.gameState = new GameState();
+        publishSnapshot();
+        rebuildHistoryTree();
         this.selectedBlock = null;
     }
 
@@ -27,6 +36,16 @@ public class GameLogic {
         return gameState;
     }
 
+    public BoardSnapshot getSnapshot() {
+        return snapshot;
+    }
+    //任何线程都可以调用，拿到的是最近一次走完以后的棋盘快照（见BoardSnapshot），不用加锁，也不用深拷贝GameState
+
+    private void publishSnapshot() {
+        snapshot = gameState.getBoard().snapshot();
+    }
+    //棋盘每变一次（走一步、撤销、重置、读档）都要调用一次，把新的快照放进volatile变量里，别的线程马上就能看到
+
     public Block getSelectedBlock() {
         return selectedBlock;
     }
@@ -63,6 +82,8 @@ public class GameLogic {
             board.moveBlockOnBoard(selectedBlock, selectedBlock.getX() + direction.getDx(), selectedBlock.getY() + direction.getDy());
             gameState.incrementSteps();
             gameState.addMoveToHistory(record);
+            publishSnapshot();
+            historyTree.advance(MoveHistory.pack(record.getBlockId(), record.getFromX(), record.getFromY(), record.getToX(), record.getToY()), snapshot);
 
             if (checkWinCondition()) {
                 gameState.setGameWon(true);
@@ -75,60 +96,21 @@ public class GameLogic {
     //另外，注意这个方法里面有一个selectedBlock的选中，所以这个方法再后面的使用的时候需要先用一次selectedBlockAt()这个方法，更新一下selectedBlock
 
     public boolean canMove(Block block, int dx, int dy) {
-        if (block == null || (dx == 0 && dy == 0)) {
+        int direction = MoveMasks.direction(dx, dy);
+        if (block == null || direction < 0) {
             return false;
         }
 
         Board board = gameState.getBoard();
-        int newX = block.getX() + dx;
-        int newY = block.getY() + dy;
-
-
-        if (newX < 0 || (newX + block.getWidth()) > board.getWidth() ||
-                newY < 0 || (newY + block.getHeight()) > board.getHeight()) {
+        MoveMasks masks = board.getMoveMasks();
+        if (masks == null) {
+            System.out.println("The board is too large to check moves.");
             return false;
         }
-        //检查是否超越了grid的边界
-
-        if (dx > 0) {
-            for (int y = 0; y < block.getHeight(); y++) {
-                int checkX = block.getX() + block.getWidth(); // 原方块右边界的右边一格
-                int checkY = block.getY() + y;
-                int targetCellId = board.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dx < 0) {
-            for (int y = 0; y < block.getHeight(); y++) {
-                int checkX = block.getX() - 1;
-                int checkY = block.getY() + y;
-                int targetCellId = board.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dy > 0) {
-            for (int x = 0; x < block.getWidth(); x++) {
-                int checkX = block.getX() + x;
-                int checkY = block.getY() + block.getHeight();
-                int targetCellId = board.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dy < 0) {
-            for (int x = 0; x < block.getWidth(); x++) {
-                int checkX = block.getX() + x;
-                int checkY = block.getY() - 1;
-                int targetCellId = board.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        }
-        //检查要移动到的位置是不是有其他方块
-        return true;
+        long edgeMask = masks.edgeMask(block.getWidth(), block.getHeight(), block.getX(), block.getY(), direction);
+        //edgeMask是方块往这个方向走一格时新占据的那一排格子，走出grid的边界时是MoveMasks.WALL，
+        //所以越界和撞到其他方块都只要和棋盘的occupancy做一次与运算就能查出来
+        return MoveMasks.canMove(board.getOccupancy(), edgeMask);
     }
     //这个方法只是为了moveSelectedBlock()这个方法的实现更加好写而写的方法，后面不能再使用这个
     //这个方法实现能不能移动的判断
@@ -145,6 +127,8 @@ public class GameLogic {
             if (blockToMove != null) {
                 gameState.getBoard().moveBlockOnBoard(blockToMove, lastMove.getFromX(), lastMove.getFromY());
                 gameState.decrementSteps();
+                publishSnapshot();
+                historyTree.back();
 
                 if (gameState.isGameWon()) {
                     if (!checkWinConditionInternal()) {
@@ -157,13 +141,110 @@ public class GameLogic {
         }
         return false;
     }
-    //这个类是用来撤销移动的，如果返回true则能够清除Stack里面最上层的记录，再将选中的方块设定为这个被撤销过的方块
+    //这个类是用来撤销移动的，如果返回true则能够清除栈里面最上层的记录，再将选中的方块设定为这个被撤销过的方块
+
+    public boolean redoMove() {
+        if (gameState.isGameWon()) {
+            return false;
+        }
+        int node = historyTree.forward();
+        if (node == HistoryTree.NONE) {
+            return false;
+        }
+        int move = historyTree.getMove(node);
+        Board board = gameState.getBoard();
+        Block blockToMove = board.getBlockById(MoveHistory.blockId(move));
+        board.moveBlockOnBoard(blockToMove, MoveHistory.toX(move), MoveHistory.toY(move));
+        gameState.incrementSteps();
+        gameState.getMoveHistory().pushPacked(move);
+        publishSnapshot();
+
+        if (checkWinCondition()) {
+            gameState.setGameWon(true);
+        }
+        this.selectedBlock = blockToMove;
+        return true;
+    }
+    //重做最近一次撤销掉的那一步，返回true则步数加1，并且把selectedBlock定为被移动的这个；没有可以重做的返回false
+    //撤销以后如果走了别的步，就是在历史树上开了一个新分支，这时重做的是新分支，原来那一支还在树上，可以用jumpTo()回去
+
+    public boolean jumpTo(int node) {
+        if (node < 0 || node >= historyTree.size()) {
+            return false;
+        }
+        int checkpoint = historyTree.nearestCheckpoint(node);
+        Board board = gameState.getBoard();
+        if (!board.restore(historyTree.getCheckpoint(checkpoint))) {
+            System.err.println("GameLogic: 棋盘和历史记录对不上，无法跳转。");
+            return false;
+        }
+        for (int move : historyTree.movesBetween(checkpoint, node)) {
+            board.moveBlockOnBoard(board.getBlockById(MoveHistory.blockId(move)), MoveHistory.toX(move), MoveHistory.toY(move));
+        }
+        //先恢复到最近的存盘点，再往下重放最多HistoryTree.CHECKPOINT_INTERVAL步
+
+        MoveHistory history = gameState.getMoveHistory();
+        history.clear();
+        for (int move : historyTree.movesBetween(HistoryTree.ROOT, node)) {
+            history.pushPacked(move);
+        }
+        //撤销用的栈换成从开局走到这个局面的那一串，只是拷贝一些int
+        gameState.setSteps(historyTree.getDepth(node));
+        gameState.setGameWon(checkWinConditionInternal());
+        historyTree.setCurrent(node);
+        publishSnapshot();
+        this.selectedBlock = null;
+        return true;
+    }
+    //直接跳到历史树上的某个局面（节点编号见HistoryTree），不管隔了多少步，棋盘最多重放HistoryTree.CHECKPOINT_INTERVAL步
+
+    public HistoryTree getHistoryTree() {
+        return historyTree;
+    }
+
+    private void rebuildHistoryTree() {
+        Board start = new Board(gameState.getBoard());
+        MoveHistory history = gameState.getMoveHistory();
+        for (int i = history.size() - 1; i >= 0; i--) {
+            int move = history.get(i);
+            Block block = start.getBlockById(MoveHistory.blockId(move));
+            if (block == null) {
+                System.err.println("GameLogic: 历史记录里有不存在的方块，历史树只能从当前局面开始。");
+                historyTree = new HistoryTree(snapshot);
+                return;
+            }
+            start.moveBlockOnBoard(block, MoveHistory.fromX(move), MoveHistory.fromY(move));
+        }
+        //把记录里的每一步倒着退回去，得到这局的开局
+        historyTree = new HistoryTree(start.snapshot());
+        for (int i = 0; i < history.size(); i++) {
+            int move = history.get(i);
+            start.moveBlockOnBoard(start.getBlockById(MoveHistory.blockId(move)), MoveHistory.toX(move), MoveHistory.toY(move));
+            historyTree.advance(move, start.snapshot());
+        }
+    }
+    //新开一局、重置或者读档以后，按照撤销用的栈重新建一棵只有一条路的历史树
 
 
     public void resetGame() {
         gameState.resetGame();
+        publishSnapshot();
+        rebuildHistoryTree();
+        this.selectedBlock = null;
+    }
+
+    public boolean newRandomGame(int minDistance, int maxDistance) {
+        gameState.resetGame();
+        boolean randomized = gameState.getBoard().initializeRandom(minDistance, maxDistance, new Random());
+        if (!randomized) {
+            System.out.println("没能生成随机布局，使用默认的开局。");
+        }
+        publishSnapshot();
+        rebuildHistoryTree();
         this.selectedBlock = null;
+        return randomized;
     }
+    //新开一局，棋盘换成一个离胜利 minDistance 到 maxDistance 步的随机布局（见LayoutGenerator），生成不了时和resetGame()一样
 
     public boolean checkWinCondition() {
         if (gameState.isGameWon()) {
@@ -201,6 +282,8 @@ public class GameLogic {
         GameState loadedState = GameDataStorage.loadGameFromFile(file);
         if (loadedState != null) {
             this.gameState = loadedState;
+            publishSnapshot();
+            rebuildHistoryTree();
             this.selectedBlock = null;
             //重载游戏以后清空被选中的方块
 
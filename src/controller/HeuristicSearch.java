@@ -0,0 +1,349 @@
+package controller;
+
+import java.util.Arrays;
+
+/*
+* 这个类放的是带估计函数的两种搜索，估计函数是SolverBoard.estimateDistance()：
+* 1.aStar()：A*搜索，每个状态的优先级是 f = 已经走的步数g + 估计还要走的步数h，
+*   f都是不大的整数，所以用"桶"代替优先队列：第f个桶里放所有f值等于f的状态，每次从最小的非空桶里拿
+* 2.idaStar()：迭代加深的A*，每一轮只在一块棋盘上深度优先地走，f超过这一轮的上限就退回来，
+*   这一轮没找到就把上限提高到这一轮被剪掉的最小f值再来一轮；
+*   判重只看当前这条路径上有没有走过这个状态，另外加了一个固定大小的置换表，记住这一轮在某个状态上用过的最少步数，
+*   再以更多的步数走到同一个状态就不用再搜了，所以占用的内存是固定的，不会随着搜索变大
+* 两种方法找到的都是最短的解法，返回值和KlotskiSearch一样是一串状态编码，没有找到或者被SearchMonitor叫停时返回null
+* 3.beam()：随时可以停下来的束搜索，给限时模式用：一层一层往外走，但每一层只留估计值最小的width个状态，
+*   找到一个解以后把width加倍再搜一遍，看能不能找到更短的；被SearchMonitor叫停（通常是时间到了）时不返回null，
+*   而是返回到目前为止最好的结果：找到过解就返回最短的那个，没找到过就返回走到"估计离胜利最近"的那个布局的一段路，
+*   所以它的解不一定是最短的，最后一个状态也不一定是胜利状态，只有被cancel()时才返回null
+ */
+public class HeuristicSearch {
+    private static final int TRANSPOSITION_BITS = 20;
+    //IDA*置换表的大小是 2^20 项，一共占十几MB
+    public static final int BEAM_START_WIDTH = 64;
+    public static final int BEAM_MAX_WIDTH = 1 << 16;
+    //束搜索每一层留下的状态个数从BEAM_START_WIDTH开始每一轮加倍，最多到BEAM_MAX_WIDTH
+
+    private HeuristicSearch() {
+    }
+
+    public static long[] aStar(SolverBoard board, SearchMonitor monitor) {
+        if (board.isWin()) {
+            return new long[]{board.getCanonicalKey()};
+        }
+        StateList states = new StateList();
+        int[] depths = new int[1024];
+        // 每个状态的g值，和states的下标一一对应
+        LongHashSet closed = new LongHashSet();
+        // 已经展开过的状态，估计函数满足"走一步最多变化1"，所以一个状态第一次被展开时g就是最小的
+        BucketQueue open = new BucketQueue();
+        open.push(board.estimateDistance(), states.add(board.getCanonicalKey(), -1));
+
+        int[] moves = new int[SolverBoard.MOVE_BUFFER_SIZE];
+        long statesProcessed = 0;
+        int index;
+        while ((index = open.pop()) != -1) {
+            if (!closed.add(states.getKey(index))) {
+                continue;
+            }
+            // 同一个状态可能被放进队列好几次，只有第一次拿出来的那次算数
+            board.load(states.getKey(index));
+            if (board.isWin()) {
+                System.out.println("AI: A*找到解法！总共处理 " + statesProcessed + " 个状态。");
+                return states.pathTo(index);
+            }
+            statesProcessed++;
+            if (monitor.tick(statesProcessed, open.size(), depths[index])) {
+                return null;
+            }
+            int g = depths[index] + 1;
+            int moveCount = board.generateMoves(moves);
+            for (int i = 0; i < moveCount; i++) {
+                board.applyMove(moves[i]);
+                long key = board.getCanonicalKey();
+                if (!closed.contains(key)) {
+                    int child = states.add(key, index);
+                    if (child == depths.length) {
+                        depths = Arrays.copyOf(depths, depths.length * 2);
+                    }
+                    depths[child] = g;
+                    open.push(g + board.estimateDistance(), child);
+                }
+                board.undoMove(moves[i]);
+            }
+        }
+        System.out.println("AI: A*未找到解法。总共处理 " + statesProcessed + " 个状态。");
+        return null;
+    }
+    //A*搜索，board会被当作工作棋盘反复改写
+
+    public static long[] idaStar(SolverBoard board, SearchMonitor monitor) {
+        if (board.isWin()) {
+            return new long[]{board.getCanonicalKey()};
+        }
+        IdaContext context = new IdaContext(board, monitor);
+        int bound = board.estimateDistance();
+        while (true) {
+            context.nextBound = Integer.MAX_VALUE;
+            context.iteration++;
+            context.path[0] = board.getCanonicalKey();
+            if (context.search(0, bound, -1)) {
+                System.out.println("AI: IDA*找到解法！总共处理 " + context.statesProcessed + " 个状态。");
+                return Arrays.copyOf(context.path, context.pathLength);
+            }
+            if (monitor.isStopped()) {
+                return null;
+            }
+            if (context.nextBound == Integer.MAX_VALUE) {
+                System.out.println("AI: IDA*未找到解法。总共处理 " + context.statesProcessed + " 个状态。");
+                return null;
+            }
+            bound = context.nextBound;
+        }
+    }
+    //IDA*搜索，同样会把board当作工作棋盘改写（每一轮结束时它都会回到起点的样子）
+
+    public static long[] beam(SolverBoard board, SearchMonitor monitor) {
+        if (board.isWin()) {
+            return new long[]{board.getCanonicalKey()};
+        }
+        BeamContext context = new BeamContext(board, monitor);
+        for (int width = BEAM_START_WIDTH; width <= BEAM_MAX_WIDTH && !monitor.isStopped(); width *= 2) {
+            if (context.pass(width)) {
+                break;
+            }
+        }
+        if (monitor.isCancelled()) {
+            return null;
+        }
+        if (context.bestPlan != null) {
+            System.out.println("AI: 束搜索找到 " + (context.bestPlan.length - 1) + " 步的解法，总共处理 " + context.statesProcessed + " 个状态。");
+            return context.bestPlan;
+        }
+        if (context.bestPartial != null) {
+            System.out.println("AI: 束搜索还没找到完整的解法，先给出 " + (context.bestPartial.length - 1) + " 步，估计离胜利还差 "
+                    + context.bestPartialEstimate + " 步。");
+            return context.bestPartial;
+        }
+        return null;
+    }
+    //束搜索，board同样会被当作工作棋盘改写；返回的路径可能只是前半段，调用者要自己看最后一个状态是不是胜利状态
+
+    private static class BucketQueue {
+        private int[][] buckets = new int[64][];
+        private int[] sizes = new int[64];
+        private int lowest;
+        //lowest以下的桶一定都是空的
+
+        void push(int f, int index) {
+            if (f >= buckets.length) {
+                int newLength = Math.max(f + 1, buckets.length * 2);
+                buckets = Arrays.copyOf(buckets, newLength);
+                sizes = Arrays.copyOf(sizes, newLength);
+            }
+            if (buckets[f] == null) {
+                buckets[f] = new int[256];
+            } else if (sizes[f] == buckets[f].length) {
+                buckets[f] = Arrays.copyOf(buckets[f], sizes[f] * 2);
+            }
+            buckets[f][sizes[f]++] = index;
+            lowest = Math.min(lowest, f);
+        }
+
+        int size() {
+            int total = 0;
+            for (int f = lowest; f < sizes.length; f++) {
+                total += sizes[f];
+            }
+            return total;
+        }
+        //只在报告进度时用到
+
+        int pop() {
+            while (lowest < buckets.length && sizes[lowest] == 0) {
+                lowest++;
+            }
+            if (lowest == buckets.length) {
+                return -1;
+            }
+            return buckets[lowest][--sizes[lowest]];
+        }
+        //从f最小的桶里拿一个，同一个桶里后放进去的先拿，这样g更大、离胜利更近的状态会先被展开，队列空了返回-1
+    }
+    //A*用的桶队列
+
+    private static class IdaContext {
+        private final SolverBoard board;
+        private final SearchMonitor monitor;
+        private long[] path = new long[256];
+        private int pathLength;
+        private int nextBound;
+        private long statesProcessed;
+        private int iteration;
+        private final long[] tableKeys = new long[1 << TRANSPOSITION_BITS];
+        private final int[] tableDepths = new int[1 << TRANSPOSITION_BITS];
+        //置换表里每一项记着 状态编码，以及 (第几轮 << 16 | 这一轮在这个状态上用过的最少步数)，
+        //不是这一轮写进去的记录直接当作没有
+        private int[][] moveBuffers = new int[256][];
+        //每一层递归各用一个生成移动的数组，反复使用
+
+        IdaContext(SolverBoard board, SearchMonitor monitor) {
+            this.board = board;
+            this.monitor = monitor;
+        }
+
+        boolean search(int depth, int bound, int lastMove) {
+            //被monitor叫停时一路返回false，由idaStar()检查isStopped()
+            int f = depth + board.estimateDistance();
+            if (f > bound) {
+                nextBound = Math.min(nextBound, f);
+                return false;
+            }
+            if (board.isWin()) {
+                pathLength = depth + 1;
+                return true;
+            }
+            statesProcessed++;
+            if (monitor.tick(statesProcessed, depth, bound)) {
+                return false;
+            }
+            // IDA*没有队列，报告进度时"队列大小"报的是当前路径的长度，"深度"报的是这一轮的上限
+            if (depth + 1 >= path.length) {
+                path = Arrays.copyOf(path, path.length * 2);
+            }
+            if (depth >= moveBuffers.length) {
+                moveBuffers = Arrays.copyOf(moveBuffers, moveBuffers.length * 2);
+            }
+            if (moveBuffers[depth] == null) {
+                moveBuffers[depth] = new int[SolverBoard.MOVE_BUFFER_SIZE];
+            }
+            int[] moves = moveBuffers[depth];
+            int moveCount = board.generateMoves(moves);
+            for (int i = 0; i < moveCount; i++) {
+                if (moves[i] == (lastMove ^ 1)) {
+                    continue;
+                }
+                // 刚走过来的那一步不用马上退回去
+                board.applyMove(moves[i]);
+                long key = board.getCanonicalKey();
+                if (!onPath(key, depth) && record(key, depth + 1)) {
+                    path[depth + 1] = key;
+                    if (search(depth + 1, bound, moves[i])) {
+                        board.undoMove(moves[i]);
+                        return true;
+                    }
+                }
+                board.undoMove(moves[i]);
+            }
+            return false;
+        }
+        //深度优先地往下走，找到胜利状态时path[0..depth]就是答案
+
+        private boolean onPath(long key, int depth) {
+            for (int i = depth; i >= 0; i--) {
+                if (path[i] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean record(long key, int depth) {
+            int slot = LongHashSet.mix(key) & ((1 << TRANSPOSITION_BITS) - 1);
+            int stamp = (iteration << 16) | depth;
+            if (tableKeys[slot] == key && (tableDepths[slot] >>> 16) == iteration && (tableDepths[slot] & 0xFFFF) <= depth) {
+                return false;
+            }
+            tableKeys[slot] = key;
+            tableDepths[slot] = stamp;
+            return true;
+        }
+        //这一轮已经用同样多或者更少的步数走到过这个状态，就不用再搜一遍了，返回false；否则记下来返回true
+    }
+
+    private static class BeamContext {
+        private final SolverBoard board;
+        private final SearchMonitor monitor;
+        private final long startKey;
+        private final int[] moves = new int[SolverBoard.MOVE_BUFFER_SIZE];
+        private long statesProcessed;
+        private long[] bestPlan;
+        //到目前为止最短的完整解法
+        private long[] bestPartial;
+        private int bestPartialEstimate = Integer.MAX_VALUE;
+        //还没有完整解法时，估计离胜利最近的那个布局和走到它的路
+        private long[] candidateKeys = new long[1024];
+        private int[] candidateParents = new int[1024];
+        private long[] candidateOrder = new long[1024];
+        //每一层的候选状态，candidateOrder里放的是 (估计值 << 32 | 候选下标)，排好序以后前width个留下来
+
+        BeamContext(SolverBoard board, SearchMonitor monitor) {
+            this.board = board;
+            this.monitor = monitor;
+            this.startKey = board.getCanonicalKey();
+        }
+
+        boolean pass(int width) {
+            StateList states = new StateList();
+            LongHashSet visited = new LongHashSet();
+            int[] layer = {states.add(startKey, -1)};
+            int layerSize = 1;
+            visited.add(startKey);
+            boolean pruned = false;
+            int limit = bestPlan == null ? Integer.MAX_VALUE : bestPlan.length - 1;
+            //已经有解法时，不比它短的路就不用再往下走了
+            for (int depth = 0; layerSize > 0 && depth + 1 < limit; depth++) {
+                int candidateCount = 0;
+                LongHashSet layerSeen = new LongHashSet();
+                for (int i = 0; i < layerSize; i++) {
+                    statesProcessed++;
+                    if (monitor.tick(statesProcessed, layerSize, depth)) {
+                        return false;
+                    }
+                    board.load(states.getKey(layer[i]));
+                    int moveCount = board.generateMoves(moves);
+                    for (int m = 0; m < moveCount; m++) {
+                        board.applyMove(moves[m]);
+                        long key = board.getCanonicalKey();
+                        if (!visited.contains(key) && layerSeen.add(key)) {
+                            if (board.isWin()) {
+                                bestPlan = states.pathTo(states.add(key, layer[i]));
+                                return !pruned;
+                            }
+                            //这一层之前没有丢掉过状态的话，这就是最短的解法，不用再加宽了
+                            if (candidateCount == candidateKeys.length) {
+                                candidateKeys = Arrays.copyOf(candidateKeys, candidateCount * 2);
+                                candidateParents = Arrays.copyOf(candidateParents, candidateCount * 2);
+                                candidateOrder = Arrays.copyOf(candidateOrder, candidateCount * 2);
+                            }
+                            candidateKeys[candidateCount] = key;
+                            candidateParents[candidateCount] = layer[i];
+                            candidateOrder[candidateCount] = ((long) board.estimateDistance() << 32) | candidateCount;
+                            candidateCount++;
+                        }
+                        board.undoMove(moves[m]);
+                    }
+                }
+                if (candidateCount > width) {
+                    pruned = true;
+                    Arrays.sort(candidateOrder, 0, candidateCount);
+                }
+                layerSize = Math.min(candidateCount, width);
+                if (layer.length < layerSize) {
+                    layer = new int[Math.max(layerSize, layer.length * 2)];
+                }
+                for (int i = 0; i < layerSize; i++) {
+                    int candidate = (int) candidateOrder[i];
+                    int estimate = (int) (candidateOrder[i] >>> 32);
+                    layer[i] = states.add(candidateKeys[candidate], candidateParents[candidate]);
+                    visited.add(candidateKeys[candidate]);
+                    if (bestPlan == null && estimate < bestPartialEstimate) {
+                        bestPartialEstimate = estimate;
+                        bestPartial = states.pathTo(layer[i]);
+                    }
+                }
+            }
+            return !pruned;
+        }
+        //用这个宽度从起点重新搜一遍，返回true说明这一轮一个状态都没丢掉，也就是已经证明了最短（或者无解），不用再加宽了
+    }
+}
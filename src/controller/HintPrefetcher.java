@@ -0,0 +1,128 @@
+package controller;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+* 这个类在玩家每走一步以后，趁玩家还在想下一步的时候，在后台提前把当前局面的AI解法算好（"预判"）
+* 1.只有一个后台线程，而且是最低优先级的守护线程，同一时间最多只算一个局面，不会和动画的Timer抢CPU
+* 2.schedule()把上一个还没算完的局面取消掉（SearchMonitor.cancel()），再开始算新的局面，
+*   所以不管玩家走得多快，排队的永远只有最新的那一个
+* 3.算好的解法按BoardSnapshot记在一个很小的LRU缓存里，之后点AI时先用getCached()查一下，查到了就不用再算
+* 4.默认是关着的，要用setEnabled(true)打开；R是缓存的求解结果，构造时传进来一个"怎么求解"的函数，
+*   只是一串走法时用forMoves()，比如 HintPrefetcher.forMoves(new AISolver()::solve)，
+*   技能模式缓存的是整个技能方案，比如 new HintPrefetcher<SkillPlan2>(...)
+ */
+public class HintPrefetcher<R> {
+    public interface Solver<R> {
+        R solve(BoardSnapshot snapshot, SearchMonitor monitor);
+    }
+    //没有解时返回null，null不会放进缓存
+
+    public static final long TIME_LIMIT_MILLIS = 10000;
+    public static final long STATE_LIMIT = 2000000;
+    //预判只是锦上添花，算太久就放弃，等玩家真的点AI时再算
+    private static final int CACHE_SIZE = 32;
+
+    private final Solver<R> solver;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "klotski-hint");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final Map<BoardSnapshot, R> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BoardSnapshot, R> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    //按访问顺序排的LinkedHashMap，超过CACHE_SIZE个就把最久没用的去掉，只在synchronized方法里读写
+    private volatile boolean enabled;
+    private BoardSnapshot pendingSnapshot;
+    private SearchMonitor pendingMonitor;
+    private Future<?> pendingTask;
+
+    public HintPrefetcher(Solver<R> solver) {
+        this.solver = solver;
+    }
+
+    public static <M> HintPrefetcher<List<M>> forMoves(Solver<List<M>> solver) {
+        return new HintPrefetcher<>((snapshot, monitor) -> {
+            List<M> moves = solver.solve(snapshot, monitor);
+            return moves == null || moves.isEmpty() ? null : moves;
+        });
+    }
+    //AISolver这些求解器没有解时返回的是空的List，这里换成null，空的解法就不会放进缓存
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            cancel();
+        }
+    }
+    //关掉时顺便取消正在算的局面，已经算好的缓存留着
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void schedule(BoardSnapshot snapshot) {
+        if (!enabled || snapshot == null || snapshot.equals(pendingSnapshot) || cache.containsKey(snapshot)) {
+            return;
+        }
+        cancel();
+        SearchMonitor monitor = new SearchMonitor(TIME_LIMIT_MILLIS, STATE_LIMIT);
+        pendingSnapshot = snapshot;
+        pendingMonitor = monitor;
+        pendingTask = executor.submit(() -> {
+            if (monitor.isStopped()) {
+                return;
+            }
+            R solution = solver.solve(snapshot, monitor);
+            finish(snapshot, monitor, solution);
+        });
+    }
+    //棋盘变了以后调用（在哪个线程都可以），取消上一个局面，开始在后台算这个局面；没打开、正在算或者已经算好时什么都不做
+
+    private synchronized void finish(BoardSnapshot snapshot, SearchMonitor monitor, R solution) {
+        if (!monitor.isStopped() && solution != null) {
+            cache.put(snapshot, solution);
+        }
+        if (pendingMonitor == monitor) {
+            pendingSnapshot = null;
+            pendingMonitor = null;
+            pendingTask = null;
+        }
+    }
+    //被取消、超出预算或者没有解时不放进缓存
+
+    public synchronized void cancel() {
+        if (pendingMonitor != null) {
+            pendingMonitor.cancel();
+            pendingTask.cancel(false);
+        }
+        pendingSnapshot = null;
+        pendingMonitor = null;
+        pendingTask = null;
+    }
+    //玩家自己点了AI、重置或者关掉窗口时调用，后台线程很快就会停下来
+
+    public synchronized R getCached(BoardSnapshot snapshot) {
+        if (snapshot == null) {
+            return null;
+        }
+        return cache.get(snapshot);
+    }
+    //这个局面已经算好的解法，没有时返回null，返回的结果不要修改
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+    //窗口关掉以后调用，之后不能再用
+}
@@ -0,0 +1,170 @@
+package controller;
+
+import java.util.Arrays;
+
+/*
+* 这个类是"走棋历史树"，撤销以后再走别的步不会把原来的走法丢掉，而是在树上多出一个分支：
+* 1.每个节点是一个局面，节点之间的边是一步（用MoveHistory.pack()压成的int），根节点是开局
+* 2.撤销就是走到父节点，重做就是走回最近一次从这里离开时去的那个子节点（getRedoChild()），
+*   在某个局面走了一步，如果这一步以前走过，就直接走到原来那个子节点，不会出现重复的分支
+* 3.每隔CHECKPOINT_INTERVAL步（深度是它的倍数的节点）存一个BoardSnapshot当作"存盘点"，
+*   要跳到任意一个节点时，先找到它上面最近的存盘点，把棋盘恢复成存盘点的样子，再往下重放最多CHECKPOINT_INTERVAL步就到了，
+*   不用一步一步撤销，也不用从开局开始重放
+* 4.和StateList一样，所有节点都放在几个int数组里，每个节点只占几个int
+* 这个类只管记录，真正改动棋盘的是GameLogic（见GameLogic.jumpTo()）
+ */
+public class HistoryTree {
+    public static final int CHECKPOINT_INTERVAL = 16;
+    public static final int ROOT = 0;
+    public static final int NONE = -1;
+
+    private int[] parents;
+    private int[] moves;
+    //从父节点走到这个节点的那一步，根节点是MoveHistory.NONE
+    private int[] depths;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    //子节点用"第一个孩子+下一个兄弟"串起来
+    private int[] redoChildren;
+    //最近一次从这个节点往下走到的子节点，重做时走它
+    private BoardSnapshot[] checkpoints;
+    //只有深度是CHECKPOINT_INTERVAL倍数的节点才有
+    private int size;
+    private int current;
+
+    public HistoryTree(BoardSnapshot start) {
+        this.parents = new int[64];
+        this.moves = new int[64];
+        this.depths = new int[64];
+        this.firstChildren = new int[64];
+        this.nextSiblings = new int[64];
+        this.redoChildren = new int[64];
+        this.checkpoints = new BoardSnapshot[64];
+        addNode(NONE, MoveHistory.NONE);
+        checkpoints[ROOT] = start;
+        this.current = ROOT;
+    }
+    //start是开局的快照，根节点一定是存盘点
+
+    private int addNode(int parent, int move) {
+        if (size == parents.length) {
+            int newCapacity = size * 2;
+            parents = Arrays.copyOf(parents, newCapacity);
+            moves = Arrays.copyOf(moves, newCapacity);
+            depths = Arrays.copyOf(depths, newCapacity);
+            firstChildren = Arrays.copyOf(firstChildren, newCapacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, newCapacity);
+            redoChildren = Arrays.copyOf(redoChildren, newCapacity);
+            checkpoints = Arrays.copyOf(checkpoints, newCapacity);
+        }
+        int node = size++;
+        parents[node] = parent;
+        moves[node] = move;
+        depths[node] = parent == NONE ? 0 : depths[parent] + 1;
+        firstChildren[node] = NONE;
+        redoChildren[node] = NONE;
+        nextSiblings[node] = parent == NONE ? NONE : firstChildren[parent];
+        if (parent != NONE) {
+            firstChildren[parent] = node;
+        }
+        return node;
+    }
+
+    public int advance(int move, BoardSnapshot after) {
+        int child = findChild(current, move);
+        if (child == NONE) {
+            child = addNode(current, move);
+            if (depths[child] % CHECKPOINT_INTERVAL == 0) {
+                checkpoints[child] = after;
+            }
+        }
+        redoChildren[current] = child;
+        current = child;
+        return child;
+    }
+    //在当前局面走了一步move，after是走完以后的快照（只有要存盘点时才会留下来），返回走到的节点
+
+    public int back() {
+        if (current == ROOT) {
+            return NONE;
+        }
+        int parent = parents[current];
+        redoChildren[parent] = current;
+        current = parent;
+        return current;
+    }
+    //撤销：走到父节点，并且记住是从哪个子节点回来的，已经在开局时返回NONE
+
+    public int forward() {
+        int child = redoChildren[current];
+        if (child == NONE) {
+            return NONE;
+        }
+        current = child;
+        return current;
+    }
+    //重做：走回最近一次去过的子节点，没有可以重做的时返回NONE
+
+    public void setCurrent(int node) {
+        for (int child = node; child != ROOT; child = parents[child]) {
+            redoChildren[parents[child]] = child;
+        }
+        current = node;
+    }
+    //直接跳到某个节点，路上每个节点的"重做"都指向通往它的那个子节点
+
+    public int findChild(int node, int move) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            if (moves[child] == move) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    public int nearestCheckpoint(int node) {
+        while (node != ROOT && checkpoints[node] == null) {
+            node = parents[node];
+        }
+        return node;
+    }
+    //node自己或者它上面最近的存盘点，最多往上走CHECKPOINT_INTERVAL-1步；棋盘太大没有快照时一直退到根节点
+
+    public int[] movesBetween(int ancestor, int node) {
+        int[] path = new int[depths[node] - depths[ancestor]];
+        for (int i = path.length - 1; i >= 0; i--) {
+            path[i] = moves[node];
+            node = parents[node];
+        }
+        return path;
+    }
+    //从ancestor走到node要依次走的每一步，ancestor必须是node自己或者它的祖先
+
+    public int getCurrent() {
+        return current;
+    }
+
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    public int getMove(int node) {
+        return moves[node];
+    }
+
+    public int getDepth(int node) {
+        return depths[node];
+    }
+
+    public int getRedoChild(int node) {
+        return redoChildren[node];
+    }
+
+    public BoardSnapshot getCheckpoint(int node) {
+        return checkpoints[node];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,329 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+* 这个类放的是AI真正的搜索过程，三个模式的AISolver都是先把自己的棋盘转成SolverBoard，再调用这里的方法：
+* 1.breadthFirst()：单向BFS，从起点一直搜到任意一个胜利状态
+* 2.bidirectional()：双向BFS，从起点和所有的胜利状态（用LayoutEnumerator列举出来）同时往中间搜
+* 3.search()：按照SearchMode选一种方式求解，并行BFS在ParallelSearch里面，A*和IDA*在HeuristicSearch里面，残局库在Tablebase里面，
+*   同一局里反复求解时接着上一次结果做的反向BFS在SolverSession里面
+*   限时模式用的束搜索也在HeuristicSearch里面，它被叫停时返回的是目前最好的结果而不是null
+* 4.slidingBreadthFirst()：单向BFS，但一个棋子连续滑动任意几格算一步（见SolverBoard.generateSlides()）
+*   不管哪种模式，search()都先查一下跨越多次启动的解法缓存（SolutionCache），求出来的解也会记进去（残局库已经映射好时直接查残局库）
+* 两个方法都只在一块SolverBoard上原地走一步、记下新状态的编码、再退回来，不会为每个状态创建Board和GameState，
+* 判重用的是getCanonicalKey()，同形状的棋子互换、左右镜像的布局都只搜一次，
+* 每处理一个状态都会问一下SearchMonitor要不要停下来（超时、状态太多、内存不够或者被取消），顺便报告进度，
+* 搜到以后返回从起点到终点的一串状态编码，没有找到就返回null，
+* 再用起点棋盘的translatePath()把它翻译成真正的移动
+ */
+public class KlotskiSearch {
+    private static volatile boolean offHeapTables = false;
+    //为true时双向BFS的 状态编码->下标 表放在堆外，见LongIntHashMap
+    private static volatile boolean solutionCacheEnabled = true;
+    //为true时search()先查、再记解法缓存，见SolutionCache
+
+    private static final ExecutorService SOLVER_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "klotski-solver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //AISolver.solveAsync()用的线程，都是守护线程，关掉游戏窗口时不会挡着程序退出
+
+    private KlotskiSearch() {
+    }
+
+    public static ExecutorService solverExecutor() {
+        return SOLVER_EXECUTOR;
+    }
+
+    public static void setOffHeapTables(boolean offHeap) {
+        offHeapTables = offHeap;
+    }
+    //自己摆的很大的棋盘可以打开这个，搜索时占的大块内存就不会引起GC停顿
+
+    public static void setSolutionCacheEnabled(boolean enabled) {
+        solutionCacheEnabled = enabled;
+    }
+    //比较各个搜索模式快慢的时候可以关掉，不然除了第一次以外都是直接查缓存
+
+    public static long[] search(SearchMode mode, SolverBoard start) {
+        return search(mode, start, new SearchMonitor());
+    }
+
+    public static long[] search(SearchMode mode, SolverBoard start, SearchMonitor monitor) {
+        if (!solutionCacheEnabled || mode == SearchMode.SLIDING) {
+            return searchWithoutCache(mode, start, monitor);
+        }
+        //缓存里的步数是按格计的，按滑动计最短的解在缓存看来不一定最短
+        if (mode == SearchMode.TABLEBASE) {
+            Tablebase tablebase = Tablebase.loadedFor(start);
+            if (tablebase != null) {
+                return tablebase.path(start);
+            }
+        }
+        //残局库本来就是查表，再查、再记缓存没有意义，还要白白写文件
+        SolutionCache cache = SolutionCache.getDefault();
+        long[] keyPath = cache.path(start);
+        if (keyPath == null) {
+            keyPath = searchWithoutCache(mode, start, monitor);
+            if (mode != SearchMode.BEAM) {
+                cache.record(start, keyPath);
+            }
+            //束搜索的解不一定最短，也可能只是前半段，不能记进缓存
+        }
+        return keyPath;
+    }
+    //先查解法缓存（见SolutionCache），查不到再按模式求解，求出来的解记进缓存，下次启动程序也能直接用；残局库已经映射好时直接查残局库
+
+    private static long[] searchWithoutCache(SearchMode mode, SolverBoard start, SearchMonitor monitor) {
+        switch (mode) {
+            case PARALLEL:
+                return ParallelSearch.breadthFirst(start, monitor);
+            case A_STAR:
+                return HeuristicSearch.aStar(start.copy(), monitor);
+            case IDA_STAR:
+                return HeuristicSearch.idaStar(start.copy(), monitor);
+            case BIDIRECTIONAL:
+                return bidirectional(start.copy(), winningKeys(start), monitor);
+            case TABLEBASE:
+                Tablebase tablebase = Tablebase.loadedFor(start);
+                if (tablebase != null) {
+                    return tablebase.path(start);
+                }
+                return SolverSession.forBoard(start).solve(start, monitor);
+            case SESSION:
+                return SolverSession.forBoard(start).solve(start, monitor);
+            case BEAM:
+                Tablebase loaded = Tablebase.loadedFor(start);
+                if (loaded != null) {
+                    return loaded.path(start);
+                }
+                return HeuristicSearch.beam(start.copy(), monitor);
+            case SLIDING:
+                return slidingBreadthFirst(start.copy(), monitor);
+            case BREADTH_FIRST:
+            default:
+                return breadthFirst(start.copy(), monitor);
+        }
+    }
+    //按照选好的模式求解，start不会被改动（需要工作棋盘的方法都传的是copy()），TABLEBASE模式的残局库还没映射好时退回SolverSession
+    //monitor决定什么时候停下来（时间、状态数量、内存、被取消），停下来时返回null
+
+    public static long[] breadthFirst(SolverBoard board) {
+        return breadthFirst(board, new SearchMonitor());
+    }
+
+    public static long[] breadthFirst(SolverBoard board, SearchMonitor monitor) {
+        if (board.isWin()) {
+            return new long[]{board.getCanonicalKey()};
+        }
+        StateList states = new StateList();
+        // BFS的队列和所有走过的状态都放在这里面，每个状态记着它的父状态下标
+        LongHashSet visited = new LongHashSet();
+        states.add(board.getCanonicalKey(), -1);
+        visited.add(board.getCanonicalKey());
+
+        int[] moves = new int[SolverBoard.MOVE_BUFFER_SIZE];
+        long statesProcessed = 0;
+        int depth = 0;
+        int levelEnd = states.size();
+        // levelEnd是当前这一层在states里结束的位置，只用来报告进度
+        for (int head = 0; head < states.size(); head++) {
+            if (head == levelEnd) {
+                depth++;
+                levelEnd = states.size();
+            }
+            board.load(states.getKey(head));
+            statesProcessed++;
+            if (monitor.tick(statesProcessed, states.size() - head, depth)) {
+                return null;
+            }
+            int moveCount = board.generateMoves(moves);
+            for (int i = 0; i < moveCount; i++) {
+                board.applyMove(moves[i]);
+                long key = board.getCanonicalKey();
+                if (visited.add(key)) {
+                    int index = states.add(key, head);
+                    if (board.isWin()) {
+                        System.out.println("AI: 找到解法！总共处理 " + statesProcessed + " 个状态。");
+                        return states.pathTo(index);
+                    }
+                }
+                board.undoMove(moves[i]);
+            }
+        }
+        System.out.println("AI: 未找到解法（队列已空）。总共处理 " + statesProcessed + " 个状态。");
+        return null;
+    }
+    //单向BFS，board会被当作工作棋盘反复改写，调用者如果之后还要用原来的棋盘，应该传一个copy()进来
+
+    public static long[] slidingBreadthFirst(SolverBoard board, SearchMonitor monitor) {
+        if (board.isWin()) {
+            return new long[]{board.getCanonicalKey()};
+        }
+        StateList states = new StateList();
+        LongHashSet visited = new LongHashSet();
+        states.add(board.getCanonicalKey(), -1);
+        visited.add(board.getCanonicalKey());
+
+        long[] slides = new long[SolverBoard.SLIDE_BUFFER_SIZE];
+        long statesProcessed = 0;
+        int depth = 0;
+        int levelEnd = states.size();
+        for (int head = 0; head < states.size(); head++) {
+            if (head == levelEnd) {
+                depth++;
+                levelEnd = states.size();
+            }
+            board.load(states.getKey(head));
+            statesProcessed++;
+            if (monitor.tick(statesProcessed, states.size() - head, depth)) {
+                return null;
+            }
+            int slideCount = board.generateSlides(slides);
+            for (int i = 0; i < slideCount; i++) {
+                if (visited.add(slides[i])) {
+                    // 镜像只在胜利位置对称时才折叠，所以代表编码是不是胜利状态可以直接从编码上看出来
+                    int index = states.add(slides[i], head);
+                    if (StateCodec.isWin(slides[i], board.getWidth(), board.getGoalX(), board.getGoalY())) {
+                        long[] slidePath = states.pathTo(index);
+                        System.out.println("AI: 找到解法，共滑动 " + (slidePath.length - 1) + " 次！总共处理 " + statesProcessed + " 个状态。");
+                        return expandSlides(board, slidePath);
+                    }
+                }
+            }
+        }
+        System.out.println("AI: 未找到解法（队列已空）。总共处理 " + statesProcessed + " 个状态。");
+        return null;
+    }
+    //和breadthFirst()一样的单向BFS，只是每一层是"再滑动一次"，所以找到的解滑动的次数最少（走的格数不一定最少），
+    //返回的是拆成一格一格以后的状态编码，可以直接交给translatePath()；board会被当作工作棋盘反复改写
+
+    private static long[] expandSlides(SolverBoard board, long[] slidePath) {
+        List<long[]> pieces = new ArrayList<>();
+        int length = 1;
+        for (int i = 1; i < slidePath.length; i++) {
+            board.load(slidePath[i - 1]);
+            long[] steps = board.slidePath(slidePath[i]);
+            if (steps == null) {
+                System.err.println("AI: 第 " + i + " 次滑动无法拆成一格一格的走法。");
+                return null;
+            }
+            pieces.add(steps);
+            length += steps.length;
+        }
+        long[] keyPath = new long[length];
+        keyPath[0] = slidePath[0];
+        int next = 1;
+        for (long[] steps : pieces) {
+            System.arraycopy(steps, 0, keyPath, next, steps.length);
+            next += steps.length;
+        }
+        return keyPath;
+    }
+    //把每一次滑动拆成途经的每一格
+
+    public static long[] bidirectional(SolverBoard board) {
+        return bidirectional(board, winningKeys(board), new SearchMonitor());
+    }
+    //双向BFS，反向的那一边从这组棋子所有的胜利状态同时出发
+
+    public static long[] winningKeys(SolverBoard board) {
+        long[] layouts = LayoutEnumerator.winningLayouts(board.getWidth(), board.getHeight(), board.getShapeCounts(),
+                board.getGoalX(), board.getGoalY());
+        LongHashSet seen = new LongHashSet(layouts.length);
+        int count = 0;
+        for (long layout : layouts) {
+            long key = StateCodec.canonical(layout, board.getWidth(), board.getHeight(), board.getGoalX());
+            if (seen.add(key)) {
+                layouts[count++] = key;
+            }
+        }
+        return Arrays.copyOf(layouts, count);
+    }
+    //这组棋子（按形状算）所有胜利状态的代表编码，镜像的两个只留一个
+
+    public static long[] bidirectional(SolverBoard board, long[] goalKeys, SearchMonitor monitor) {
+        long startKey = board.getCanonicalKey();
+        if (board.isWin()) {
+            return new long[]{startKey};
+        }
+        StateList forward = new StateList();
+        StateList backward = new StateList(goalKeys.length);
+        LongIntHashMap forwardIndex = new LongIntHashMap(1024, offHeapTables);
+        LongIntHashMap backwardIndex = new LongIntHashMap(Math.max(1024, goalKeys.length), offHeapTables);
+        // 两边各有一个状态列表（同时也是队列），以及 状态编码->在列表里的下标 的记录，用来判断两边有没有相遇
+        forwardIndex.put(startKey, forward.add(startKey, -1));
+        for (long goalKey : goalKeys) {
+            if (!backwardIndex.containsKey(goalKey)) {
+                backwardIndex.put(goalKey, backward.add(goalKey, -1));
+            }
+        }
+        // 每一个胜利状态都是反向搜索的起点，它们的父状态下标都是-1
+
+        int[] moves = new int[SolverBoard.MOVE_BUFFER_SIZE];
+        int forwardHead = 0;
+        int backwardHead = 0;
+        long statesProcessed = 0;
+        int depth = 0;
+        // 两边一共走了几层
+        while (forwardHead < forward.size() && backwardHead < backward.size()) {
+            boolean expandForward = forward.size() - forwardHead <= backward.size() - backwardHead;
+            // 优先扩展较小的那一层，能有效保证循环能够更快地进行
+            StateList current = expandForward ? forward : backward;
+            LongIntHashMap currentIndex = expandForward ? forwardIndex : backwardIndex;
+            LongIntHashMap otherIndex = expandForward ? backwardIndex : forwardIndex;
+            int head = expandForward ? forwardHead : backwardHead;
+            int levelEnd = current.size();
+
+            for (; head < levelEnd; head++) {
+                board.load(current.getKey(head));
+                statesProcessed++;
+                if (monitor.tick(statesProcessed, levelEnd - head, depth)) {
+                    return null;
+                }
+                int moveCount = board.generateMoves(moves);
+                for (int i = 0; i < moveCount; i++) {
+                    board.applyMove(moves[i]);
+                    long key = board.getCanonicalKey();
+                    board.undoMove(moves[i]);
+                    int met = otherIndex.get(key);
+                    if (met != LongIntHashMap.NO_VALUE) {
+                        System.out.println("AI: 找到解法! 处理状态: " + statesProcessed);
+                        long[] forwardPath = expandForward ? forward.pathTo(head) : forward.pathTo(met);
+                        long[] backwardPath = expandForward ? backward.pathTo(met) : backward.pathTo(head);
+                        return joinPaths(forwardPath, backwardPath);
+                    }
+                    if (!currentIndex.containsKey(key)) {
+                        currentIndex.put(key, current.add(key, head));
+                    }
+                }
+            }
+            if (expandForward) {
+                forwardHead = head;
+            } else {
+                backwardHead = head;
+            }
+            depth++;
+        }
+        System.out.println("AI: 未找到解法。处理状态: " + statesProcessed);
+        return null;
+    }
+    //双向BFS，goalKeys是反向搜索的起点（代表编码，见getCanonicalKey()），同样会把board当作工作棋盘改写
+
+    private static long[] joinPaths(long[] forwardPath, long[] backwardPath) {
+        // 两段路径之间正好差展开的那个状态和相遇状态之间的一步，所以直接接起来就是完整路径
+        long[] path = new long[forwardPath.length + backwardPath.length];
+        System.arraycopy(forwardPath, 0, path, 0, forwardPath.length);
+        for (int i = 0; i < backwardPath.length; i++) {
+            path[forwardPath.length + i] = backwardPath[backwardPath.length - 1 - i];
+        }
+        return path;
+    }
+    //后向路径是从目标走到相遇点的，把它反过来接在正向路径后面，就是从起点到目标的完整路径
+}
@@ -0,0 +1,188 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+* 这个类用来列举出一组棋子在棋盘上所有可能的摆法，每一种摆法用一个状态编码（见StateCodec）表示：
+* 1.shapeCounts是按形状编号统计的棋子个数，比如横刀立马是 1个曹操，1个关羽，4个竖着的将军，4个小兵
+* 2.enumerate()列举所有摆法，winningLayouts()只列举曹操已经在目标位置上的摆法（也就是所有的胜利状态）
+* 3.做法是回溯：每次找到第一个还没被决定的格子，这个格子要么留空，要么正好是某个棋子的左上角，
+*   因为是按从上到下、从左到右的顺序找的，所以不会漏掉也不会重复
+* 4.enumerate(…, pool)是并行的版本：先按上面的回溯只决定前SPLIT_DEPTH个格子，把每一种"前缀"记下来，
+*   再用ForkJoinPool把这些前缀分给各个线程各自回溯到底，结果按前缀的顺序接起来，和单线程的结果完全一样
+* 列举出来的是普通编码，没有做镜像折叠，需要的话调用者自己用StateCodec.canonical()
+ */
+public class LayoutEnumerator {
+    public static final int SPLIT_DEPTH = 4;
+    //并行列举时先决定这么多个格子再分给各个线程，横刀立马这组棋子有两百多个前缀
+
+    private final int width;
+    private final int height;
+    private final int[] remaining;
+    private final boolean[] decided;
+    //已经被棋子占住或者决定留空的格子
+    private int emptyRemaining;
+    private final StateList result = new StateList();
+    private int splitDepth = -1;
+    //回溯到这一层时不再往下走，而是把当前的状态记成一个前缀；-1表示不拆分
+    private final List<LayoutEnumerator> prefixes = new ArrayList<>();
+    private int startCell;
+    private long startKey;
+    //前缀从哪个格子、哪个编码接着回溯
+
+    private LayoutEnumerator(int width, int height, int[] shapeCounts) {
+        this.width = width;
+        this.height = height;
+        this.remaining = shapeCounts.clone();
+        this.decided = new boolean[width * height];
+        int used = 0;
+        for (int shape = 1; shape < shapeCounts.length; shape++) {
+            used += shapeCounts[shape] * StateCodec.shapeWidth(shape) * StateCodec.shapeHeight(shape);
+        }
+        this.emptyRemaining = width * height - used;
+    }
+
+    private LayoutEnumerator(LayoutEnumerator parent, int startCell, long startKey) {
+        this.width = parent.width;
+        this.height = parent.height;
+        this.remaining = parent.remaining.clone();
+        this.decided = parent.decided.clone();
+        this.emptyRemaining = parent.emptyRemaining;
+        this.startCell = startCell;
+        this.startKey = startKey;
+    }
+    //把父亲回溯到一半的状态复制一份，作为一个前缀
+
+    public static long[] enumerate(int width, int height, int[] shapeCounts) {
+        LayoutEnumerator enumerator = new LayoutEnumerator(width, height, shapeCounts);
+        if (!StateCodec.supports(width, height) || enumerator.emptyRemaining < 0) {
+            return new long[0];
+        }
+        enumerator.search(0, 0L, 0);
+        return enumerator.result.toKeyArray();
+    }
+    //列举所有摆法，棋盘不支持或者棋子多到放不下时返回空数组
+
+    public static long[] enumerate(int width, int height, int[] shapeCounts, ForkJoinPool pool) {
+        LayoutEnumerator enumerator = new LayoutEnumerator(width, height, shapeCounts);
+        if (!StateCodec.supports(width, height) || enumerator.emptyRemaining < 0) {
+            return new long[0];
+        }
+        enumerator.splitDepth = SPLIT_DEPTH;
+        enumerator.search(0, 0L, 0);
+        if (enumerator.prefixes.isEmpty()) {
+            return enumerator.result.toKeyArray();
+        }
+        // 每种摆法要做的决定次数都一样（棋子数加空格数），所以要么全部都变成了前缀，要么不到SPLIT_DEPTH层就全部列举完了，结果已经在result里
+        return pool.invoke(new PrefixTask(enumerator.prefixes, 0, enumerator.prefixes.size()));
+    }
+    //和enumerate()一样，但在pool里并行列举
+
+    public static long[] winningLayouts(int width, int height, int[] shapeCounts, int goalX, int goalY) {
+        LayoutEnumerator enumerator = new LayoutEnumerator(width, height, shapeCounts);
+        if (!StateCodec.supports(width, height) || enumerator.emptyRemaining < 0
+                || shapeCounts[StateCodec.SHAPE_SQUARE] < 1 || !enumerator.fits(StateCodec.SHAPE_SQUARE, goalX, goalY)) {
+            return new long[0];
+        }
+        enumerator.mark(StateCodec.SHAPE_SQUARE, goalX, goalY, true);
+        enumerator.remaining[StateCodec.SHAPE_SQUARE]--;
+        enumerator.search(0, StateCodec.pieceBits(width, StateCodec.SHAPE_SQUARE, goalX, goalY), 0);
+        return enumerator.result.toKeyArray();
+    }
+    //先把曹操放在目标位置，再列举其余棋子的所有摆法
+
+    private void search(int fromCell, long key, int depth) {
+        int cell = fromCell;
+        while (cell < decided.length && decided[cell]) {
+            cell++;
+        }
+        if (depth == splitDepth) {
+            prefixes.add(new LayoutEnumerator(this, cell, key));
+            return;
+        }
+        if (cell == decided.length) {
+            result.add(key, -1);
+            return;
+        }
+        int x = cell % width;
+        int y = cell / width;
+
+        if (emptyRemaining > 0) {
+            decided[cell] = true;
+            emptyRemaining--;
+            search(cell + 1, key, depth + 1);
+            emptyRemaining++;
+            decided[cell] = false;
+        }
+        // 这个格子留空
+
+        for (int shape = 1; shape < remaining.length; shape++) {
+            if (remaining[shape] > 0 && fits(shape, x, y)) {
+                mark(shape, x, y, true);
+                remaining[shape]--;
+                search(cell + 1, key | StateCodec.pieceBits(width, shape, x, y), depth + 1);
+                remaining[shape]++;
+                mark(shape, x, y, false);
+            }
+        }
+        // 这个格子是某个棋子的左上角
+    }
+
+    private boolean fits(int shape, int x, int y) {
+        int w = StateCodec.shapeWidth(shape);
+        int h = StateCodec.shapeHeight(shape);
+        if (w == 0 || x < 0 || y < 0 || x + w > width || y + h > height) {
+            return false;
+        }
+        for (int i = 0; i < h; i++) {
+            for (int j = 0; j < w; j++) {
+                if (decided[(y + i) * width + x + j]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void mark(int shape, int x, int y, boolean value) {
+        for (int i = 0; i < StateCodec.shapeHeight(shape); i++) {
+            for (int j = 0; j < StateCodec.shapeWidth(shape); j++) {
+                decided[(y + i) * width + x + j] = value;
+            }
+        }
+    }
+
+    private static class PrefixTask extends RecursiveTask<long[]> {
+        private final List<LayoutEnumerator> prefixes;
+        private final int from;
+        private final int to;
+
+        PrefixTask(List<LayoutEnumerator> prefixes, int from, int to) {
+            this.prefixes = prefixes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from == 1) {
+                LayoutEnumerator prefix = prefixes.get(from);
+                prefix.search(prefix.startCell, prefix.startKey, 0);
+                return prefix.result.toKeyArray();
+            }
+            int middle = (from + to) >>> 1;
+            PrefixTask left = new PrefixTask(prefixes, from, middle);
+            left.fork();
+            long[] right = new PrefixTask(prefixes, middle, to).compute();
+            long[] first = left.join();
+            long[] joined = Arrays.copyOf(first, first.length + right.length);
+            System.arraycopy(right, 0, joined, first.length, right.length);
+            return joined;
+        }
+    }
+    //每个前缀各自回溯到底，两半的结果按前缀的顺序接起来
+}
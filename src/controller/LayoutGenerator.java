@@ -0,0 +1,87 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/*
+* 这个类随机生成一个"离胜利的最少步数在某个范围内"的布局，用来开新局、大挪移，让每一局都不一样
+* 1.不用搜索：这组棋子的残局库（见Tablebase）里本来就记着每一个能赢的布局离胜利几步，
+*   随机挑一项，步数在范围里就用它，不在就再挑（拒绝采样），一般几次就能挑中，只要几微秒
+* 2.范围太窄、随机挑了MAX_ATTEMPTS次都没挑中时，把残局库整个扫一遍，在所有符合的布局里均匀地挑一个，所以只要有就一定挑得到
+* 3.残局库里存的是代表编码，胜利位置对称时再随机决定要不要左右翻转，左右两种摆法都能出现
+* 4.编码里只有形状没有棋子ID，place()把真正的棋子（ID、宽、高）按形状放到布局里，同形状的棋子随机互换位置
+* 只用已经映射好的残局库（Tablebase.loadedFor()），不会读文件或者生成，所以可以直接在界面线程上调用；
+* 残局库由界面启动时的Tablebase.preloadDefault()在后台准备，还没准备好时就当作没有残局库
+* 用法：randomLayout(棋盘, 最少步数, 最多步数, random)，没有符合的布局或者残局库还没准备好时返回-1，调用者用固定的布局
+ */
+public class LayoutGenerator {
+    public static final int MAX_ATTEMPTS = 256;
+
+    private LayoutGenerator() {
+    }
+
+    public static long randomLayout(SolverBoard board, int minDistance, int maxDistance, Random random) {
+        Tablebase tablebase = Tablebase.loadedFor(board);
+        if (tablebase == null || tablebase.size() == 0) {
+            return -1;
+        }
+        int low = Math.max(1, minDistance);
+        // 步数为0的布局已经赢了，不能拿来开局
+        long layout = -1;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && layout < 0; attempt++) {
+            int index = random.nextInt(tablebase.size());
+            int distance = tablebase.distanceAt(index);
+            if (distance >= low && distance <= maxDistance) {
+                layout = tablebase.keyAt(index);
+            }
+        }
+        if (layout < 0) {
+            int matches = 0;
+            for (int index = 0; index < tablebase.size(); index++) {
+                int distance = tablebase.distanceAt(index);
+                if (distance >= low && distance <= maxDistance && random.nextInt(++matches) == 0) {
+                    layout = tablebase.keyAt(index);
+                }
+            }
+            // 蓄水池抽样，扫一遍就能在所有符合的布局里均匀地挑出一个
+            if (layout < 0) {
+                System.out.println("没有离胜利 " + low + " 到 " + maxDistance + " 步的布局。");
+                return -1;
+            }
+        }
+        if (StateCodec.isSymmetricGoal(board.getWidth(), board.getGoalX()) && random.nextBoolean()) {
+            layout = StateCodec.mirror(layout, board.getWidth(), board.getHeight());
+        }
+        return layout;
+    }
+    //返回一个离胜利 minDistance 到 maxDistance 步（按格计）的布局编码，board只用来确定棋子组合，不会被改动
+
+    public static List<int[]> place(long layout, int width, int height, List<int[]> pieces, Random random) {
+        List<int[]> unplaced = new ArrayList<>(pieces);
+        Collections.shuffle(unplaced, random);
+        List<int[]> placed = new ArrayList<>(pieces.size());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int shape = StateCodec.shapeAt(layout, width, x, y);
+                if (shape == StateCodec.SHAPE_NONE) {
+                    continue;
+                }
+                int[] piece = null;
+                for (int i = 0; i < unplaced.size() && piece == null; i++) {
+                    int[] candidate = unplaced.get(i);
+                    if (StateCodec.shapeCode(candidate[1], candidate[2]) == shape) {
+                        piece = unplaced.remove(i);
+                    }
+                }
+                if (piece == null) {
+                    return null;
+                }
+                placed.add(new int[]{piece[0], x, y});
+            }
+        }
+        return unplaced.isEmpty() ? placed : null;
+    }
+    //pieces里每一项是 {ID, 宽, 高}，返回的每一项是 {ID, x, y}；棋子和布局里的形状对不上时返回null
+}
@@ -0,0 +1,108 @@
+package controller;
+
+import java.util.Arrays;
+
+/*
+* 这个类是一个只存long的HashSet，给AI搜索记录"走过的状态"用
+* 和java.util.HashSet<Long>相比，它不需要把long包装成Long对象，每个状态只占一个long数组里的位置
+* 实现方法是开放寻址（线性探测）：数组里面0代表空位，如果真的要存0就单独用一个boolean记下来
+* 常用的方法：.add(key)第一次加入时返回true，已经存在返回false；.contains(key)；.size()
+ */
+public class LongHashSet {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] table;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+    private int resizeThreshold;
+
+    public LongHashSet() {
+        this(1024);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.table = new long[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public boolean add(long key) {
+        if (key == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int index = mix(key) & mask;
+        while (table[index] != 0) {
+            if (table[index] == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = key;
+        size++;
+        if (size > resizeThreshold) {
+            rehash();
+        }
+        return true;
+    }
+    //加入成功返回true，已经存在返回false，这样一次调用就同时完成了"判断有没有走过"和"标记为走过"
+
+    public boolean contains(long key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        int index = mix(key) & mask;
+        while (table[index] != 0) {
+            if (table[index] == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        size = 0;
+        containsZero = false;
+    }
+
+    private void rehash() {
+        long[] oldTable = table;
+        allocate(oldTable.length << 1);
+        for (long key : oldTable) {
+            if (key != 0) {
+                int index = mix(key) & mask;
+                while (table[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = key;
+            }
+        }
+    }
+    //数组装到一半就扩容一倍，保证探测的长度很短
+
+    static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+    //把key的各个bit打散，避免相近的棋盘落到相邻的位置上
+}
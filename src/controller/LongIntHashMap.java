@@ -0,0 +1,146 @@
+package controller;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/*
+* 这个类是 long -> int 的HashMap，给AI搜索记录 状态编码->下标（或者步数）用
+* 1.和java.util.HashMap<Long, Integer>相比，它不需要Long、Integer对象和Entry对象，每一项只占一个long和一个int，
+*   HashMap每一项要四五十个字节，这里在装到一半的情况下每一项也只要24个字节
+* 2.实现方法和LongHashSet一样是开放寻址（线性探测），key为0单独用一个boolean记下来
+* 3.new LongIntHashMap(预计个数, true) 会把数据放在堆外（ByteBuffer.allocateDirect），
+*   这样很大的棋盘搜索时这些数据不归垃圾回收器管，不会因为GC把界面卡住
+* 常用的方法：.put(key, value)；.get(key)，没有这个key时返回NO_VALUE；.containsKey(key)；.size()
+ */
+public class LongIntHashMap {
+    public static final int NO_VALUE = -1;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final boolean offHeap;
+    private LongBuffer keys;
+    private IntBuffer values;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+    private int zeroValue;
+    private int resizeThreshold;
+
+    public LongIntHashMap() {
+        this(1024, false);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        this(expectedSize, false);
+    }
+
+    public LongIntHashMap(int expectedSize, boolean offHeap) {
+        this.offHeap = offHeap;
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        if (offHeap) {
+            keys = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+            values = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        } else {
+            keys = LongBuffer.allocate(capacity);
+            values = IntBuffer.allocate(capacity);
+        }
+        // 新分配的ByteBuffer和数组里面都是0，正好表示空位
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public int get(long key) {
+        if (key == 0) {
+            return containsZero ? zeroValue : NO_VALUE;
+        }
+        int index = LongHashSet.mix(key) & mask;
+        long current;
+        while ((current = keys.get(index)) != 0) {
+            if (current == key) {
+                return values.get(index);
+            }
+            index = (index + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+    //没有这个key时返回NO_VALUE
+
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        int index = LongHashSet.mix(key) & mask;
+        long current;
+        while ((current = keys.get(index)) != 0) {
+            if (current == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int put(long key, int value) {
+        if (key == 0) {
+            int old = containsZero ? zeroValue : NO_VALUE;
+            if (!containsZero) {
+                containsZero = true;
+                size++;
+            }
+            zeroValue = value;
+            return old;
+        }
+        int index = LongHashSet.mix(key) & mask;
+        long current;
+        while ((current = keys.get(index)) != 0) {
+            if (current == key) {
+                int old = values.get(index);
+                values.put(index, value);
+                return old;
+            }
+            index = (index + 1) & mask;
+        }
+        keys.put(index, key);
+        values.put(index, value);
+        size++;
+        if (size > resizeThreshold) {
+            rehash();
+        }
+        return NO_VALUE;
+    }
+    //返回这个key原来对应的值，原来没有就返回NO_VALUE
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        allocate(mask + 1);
+        size = 0;
+        containsZero = false;
+    }
+
+    private void rehash() {
+        LongBuffer oldKeys = keys;
+        IntBuffer oldValues = values;
+        int oldCapacity = mask + 1;
+        allocate(oldCapacity << 1);
+        for (int i = 0; i < oldCapacity; i++) {
+            long key = oldKeys.get(i);
+            if (key != 0) {
+                int index = LongHashSet.mix(key) & mask;
+                while (keys.get(index) != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys.put(index, key);
+                values.put(index, oldValues.get(i));
+            }
+        }
+    }
+    //装到一半就扩容一倍，堆外的旧数据在没有引用以后由ByteBuffer自己释放
+}
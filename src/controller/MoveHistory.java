@@ -0,0 +1,196 @@
+package controller;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/*
+* 这个类是GameState系列用来记录走过的每一步的"栈"，用来代替原来的Stack<MoveRecord>：
+* 1.每一步压成一个int：方块ID占8位，fromX、fromY、toX、toY各占4位，放在一个会自动变长的int数组里，
+*   原来每一步要一个MoveRecord对象（对象头加5个int）再加上Vector里的一个引用，现在只要4个字节
+* 2.push()、pop()、peek()都是O(1)的，也不像Stack（Vector）那样每个方法都要加锁
+* 3.get(i)和forEach()直接读数组，不用拷贝，回放、统计时可以用
+* 4.存档时只写"有几步"和这几个int，不写数组里没用到的部分，存档也跟着变小
+* 5.getSlideCount()是按"一个棋子连续滑动任意几格算一步"的计法数出来的步数：同一个棋子接着上一步的位置继续走，不另算一步
+* 用pack()把一步压成int，用blockId()、fromX()等把它拆开；pop()和peek()在栈空时返回NONE
+ */
+public class MoveHistory implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int NONE = -1;
+    //栈空时pop()和peek()返回这个，压好的一步一定不是负数，所以不会和它混淆
+    public static final int MAX_BLOCK_ID = 255;
+    public static final int MAX_COORDINATE = 15;
+
+    private transient int[] moves;
+    private transient int size;
+    //这两个由writeObject()和readObject()自己存取
+    private transient int slides;
+    //按滑动计的步数，跟着push()、pop()增减，读档时重新数
+
+    public MoveHistory() {
+        this.moves = new int[16];
+    }
+
+    public MoveHistory(MoveHistory other) {
+        this.moves = Arrays.copyOf(other.moves, Math.max(16, other.size));
+        this.size = other.size;
+        this.slides = other.slides;
+    }
+
+    public static int pack(int blockId, int fromX, int fromY, int toX, int toY) {
+        if (blockId < 0 || blockId > MAX_BLOCK_ID || !fits(fromX) || !fits(fromY) || !fits(toX) || !fits(toY)) {
+            return NONE;
+        }
+        return (blockId << 16) | (fromX << 12) | (fromY << 8) | (toX << 4) | toY;
+    }
+    //把一步压成一个int，ID或者坐标太大放不下时返回NONE
+
+    private static boolean fits(int coordinate) {
+        return coordinate >= 0 && coordinate <= MAX_COORDINATE;
+    }
+
+    public static boolean continues(int previous, int move) {
+        return previous >= 0 && blockId(previous) == blockId(move)
+                && toX(previous) == fromX(move) && toY(previous) == fromY(move);
+    }
+    //move是不是同一个棋子接着previous继续滑，是的话按滑动计时它们算同一步
+
+    public static int blockId(int move) {
+        return move >>> 16;
+    }
+
+    public static int fromX(int move) {
+        return (move >>> 12) & 15;
+    }
+
+    public static int fromY(int move) {
+        return (move >>> 8) & 15;
+    }
+
+    public static int toX(int move) {
+        return (move >>> 4) & 15;
+    }
+
+    public static int toY(int move) {
+        return move & 15;
+    }
+
+    public boolean push(int blockId, int fromX, int fromY, int toX, int toY) {
+        int move = pack(blockId, fromX, fromY, toX, toY);
+        if (move == NONE) {
+            System.err.println("MoveHistory: 这一步的方块ID或者坐标太大，无法记录。");
+            return false;
+        }
+        pushPacked(move);
+        return true;
+    }
+
+    public void pushPacked(int move) {
+        if (move < 0) {
+            System.err.println("MoveHistory: 不是一个压好的步。");
+            return;
+        }
+        if (size == moves.length) {
+            moves = Arrays.copyOf(moves, size * 2);
+        }
+        if (!continues(peek(), move)) {
+            slides++;
+        }
+        moves[size++] = move;
+    }
+    //直接放一个已经用pack()压好的步
+
+    public int pop() {
+        if (size == 0) {
+            return NONE;
+        }
+        int move = moves[--size];
+        if (!continues(peek(), move)) {
+            slides--;
+        }
+        return move;
+    }
+
+    public int peek() {
+        if (size == 0) {
+            return NONE;
+        }
+        return moves[size - 1];
+    }
+
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return moves[index];
+    }
+    //第index步（从0开始，0是最早的一步）
+
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(moves[i]);
+        }
+    }
+    //从最早的一步开始依次处理每一步
+
+    public int size() {
+        return size;
+    }
+
+    public int getSlideCount() {
+        return slides;
+    }
+    //按滑动计的步数，不会大于size()
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+        slides = 0;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(moves[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        size = in.readInt();
+        if (size < 0) {
+            throw new InvalidObjectException("MoveHistory: 存档里的步数不对。");
+        }
+        moves = new int[Math.max(16, size)];
+        for (int i = 0; i < size; i++) {
+            moves[i] = in.readInt();
+            if (i == 0 || !continues(moves[i - 1], moves[i])) {
+                slides++;
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof MoveHistory other)) return false;
+        return Arrays.equals(moves, 0, size, other.moves, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + moves[i];
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,150 @@
+package controller;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+* 这个类是判断"一个方块能不能往某个方向走一格"的位运算引擎，界面上的走棋（GameLogic那几个类）和AI搜索（SolverBoard）共用它：
+* 1.棋盘上每个格子对应long里的一个bit（第 y*宽+x 位），被占着的格子是1，整个棋盘的占用情况就是一个long，叫occupancy
+* 2.对每一种 (方块宽, 方块高, 左上角位置, 方向)，事先算好"往这个方向走一格时新占据的那一排格子"的mask（edgeMask），
+*   这一步会走出棋盘时mask里放的是WALL这一位，而occupancy里WALL这一位永远是1
+* 3.所以判断能不能走只要 (occupancy & edgeMask) == 0 一次与运算，不用一格一格地查，也不用为四个方向各写一段循环
+* 4.同样宽高的棋盘只算一次表，用forSize()拿，4x5的棋盘所有的表加起来也只有两千多个long
+* 方向的编号和SolverBoard一样：UP=0, DOWN=1, LEFT=2, RIGHT=3，用direction(dx, dy)可以把Direction里的dx、dy换成编号
+ */
+public class MoveMasks {
+    public static final long WALL = 1L << 63;
+    //occupancy里永远是1的那一位，代表棋盘外面的"墙"
+    public static final int MAX_CELLS = 63;
+    //除去WALL，一个long最多能放63个格子
+
+    private static final Map<Integer, MoveMasks> TABLES = new ConcurrentHashMap<>();
+    private static final int[] DX = {0, 0, -1, 1};
+    private static final int[] DY = {-1, 1, 0, 0};
+
+    private final int width;
+    private final int height;
+    private final int cellCount;
+    private final long[] blockMasks;
+    //下标是 (形状下标 * 格子数 + 左上角格子)，形状下标是 (方块宽-1) * 棋盘高 + (方块高-1)
+    private final long[] edgeMasks;
+    //下标是 blockMasks的下标 * 4 + 方向
+
+    private MoveMasks(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.cellCount = width * height;
+        int shapes = width * height;
+        this.blockMasks = new long[shapes * cellCount];
+        this.edgeMasks = new long[shapes * cellCount * 4];
+        for (int blockWidth = 1; blockWidth <= width; blockWidth++) {
+            for (int blockHeight = 1; blockHeight <= height; blockHeight++) {
+                for (int cell = 0; cell < cellCount; cell++) {
+                    int x = cell % width;
+                    int y = cell / width;
+                    int index = ((blockWidth - 1) * height + blockHeight - 1) * cellCount + cell;
+                    blockMasks[index] = rectangle(x, y, blockWidth, blockHeight);
+                    boolean inside = x + blockWidth <= width && y + blockHeight <= height;
+                    for (int direction = 0; direction < 4; direction++) {
+                        edgeMasks[index * 4 + direction] = inside ? edge(x, y, blockWidth, blockHeight, direction) : WALL;
+                    }
+                }
+            }
+        }
+    }
+
+    public static boolean supports(int width, int height) {
+        return width > 0 && height > 0 && width * height <= MAX_CELLS;
+    }
+
+    public static MoveMasks forSize(int width, int height) {
+        if (!supports(width, height)) {
+            return null;
+        }
+        return TABLES.computeIfAbsent(width * 64 + height, k -> new MoveMasks(width, height));
+    }
+    //棋盘太大、一个long放不下时返回null
+
+    public static int direction(int dx, int dy) {
+        for (int direction = 0; direction < 4; direction++) {
+            if (DX[direction] == dx && DY[direction] == dy) {
+                return direction;
+            }
+        }
+        return -1;
+    }
+    //把Direction里的(dx, dy)换成方向编号，不是上下左右一格时返回-1
+
+    public static boolean canMove(long occupancy, long edgeMask) {
+        return (occupancy & edgeMask) == 0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long emptyOccupancy() {
+        return WALL;
+    }
+    //空棋盘的occupancy，只有WALL这一位
+
+    public long allCells() {
+        return WALL - 1 >>> (MAX_CELLS - cellCount);
+    }
+    //棋盘上所有格子对应的bit，occupancy取反以后和它与一下就是所有空格
+
+    public long cellBit(int x, int y) {
+        return 1L << (y * width + x);
+    }
+
+    public long blockMask(int blockWidth, int blockHeight, int x, int y) {
+        if (!validBlock(blockWidth, blockHeight, x, y)) {
+            return 0;
+        }
+        return blockMasks[((blockWidth - 1) * height + blockHeight - 1) * cellCount + y * width + x];
+    }
+    //方块占的格子，伸出棋盘的那部分不算
+
+    public long edgeMask(int blockWidth, int blockHeight, int x, int y, int direction) {
+        if (!validBlock(blockWidth, blockHeight, x, y) || direction < 0 || direction > 3) {
+            return WALL;
+        }
+        return edgeMasks[(((blockWidth - 1) * height + blockHeight - 1) * cellCount + y * width + x) * 4 + direction];
+    }
+    //方块往这个方向走一格时新占据的格子，走不出去（或者方块本来就不在棋盘里）时是WALL
+
+    private boolean validBlock(int blockWidth, int blockHeight, int x, int y) {
+        return blockWidth >= 1 && blockWidth <= width && blockHeight >= 1 && blockHeight <= height
+                && x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    private long rectangle(int x, int y, int blockWidth, int blockHeight) {
+        long mask = 0;
+        for (int i = 0; i < blockHeight; i++) {
+            for (int j = 0; j < blockWidth; j++) {
+                if (x + j < width && y + i < height) {
+                    mask |= cellBit(x + j, y + i);
+                }
+            }
+        }
+        return mask;
+    }
+
+    private long edge(int x, int y, int blockWidth, int blockHeight, int direction) {
+        switch (direction) {
+            case SolverBoard.UP:
+                return y == 0 ? WALL : rectangle(x, y - 1, blockWidth, 1);
+            case SolverBoard.DOWN:
+                return y + blockHeight >= height ? WALL : rectangle(x, y + blockHeight, blockWidth, 1);
+            case SolverBoard.LEFT:
+                return x == 0 ? WALL : rectangle(x - 1, y, 1, blockHeight);
+            default:
+                return x + blockWidth >= width ? WALL : rectangle(x + blockWidth, y, 1, blockHeight);
+        }
+    }
+    //只在建表时用一次，后面都是查表
+}
@@ -0,0 +1,167 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+* 这个类是并行版的单向BFS，一层一层地搜：
+* 1.当前这一层的所有状态放在一个long数组里，用ForkJoinPool把它切成很多小段，每一段由一个线程在自己的SolverBoard上展开
+* 2.所有线程共用一个StripedLongSet判重，谁先把一个新状态加进去，这个状态就归谁，所以下一层里不会有重复的状态
+* 3.每一段展开出来的新状态拼在一起就是下一层，下一层里一旦出现胜利状态就停下来
+* 4.因为是一整层一整层地走，第一次遇到胜利状态时走的步数一定是最少的；
+*   路径不记父状态，而是把每一层排好序留着，最后从胜利状态往回，在上一层里二分查找能走到它的那个状态
+* 和KlotskiSearch一样，返回从起点到胜利状态的一串状态编码，没找到或者被SearchMonitor叫停时返回null
+ */
+public class ParallelSearch {
+    private static final int SPLIT_THRESHOLD = 512;
+    //一段里的状态少于这个数就不再往下切了，直接在当前线程里展开
+
+    private ParallelSearch() {
+    }
+
+    public static long[] breadthFirst(SolverBoard board, SearchMonitor monitor) {
+        return breadthFirst(board, monitor, ForkJoinPool.commonPool());
+    }
+
+    public static long[] breadthFirst(SolverBoard board, SearchMonitor monitor, ForkJoinPool pool) {
+        long startKey = board.getCanonicalKey();
+        if (board.isWin()) {
+            return new long[]{startKey};
+        }
+        StripedLongSet visited = new StripedLongSet();
+        visited.add(startKey);
+        List<long[]> layers = new ArrayList<>();
+        long[] frontier = {startKey};
+        long statesProcessed = 0;
+
+        while (frontier.length > 0) {
+            Arrays.parallelSort(frontier);
+            // 每一层排好序留着，最后找路径时要在里面二分查找
+            layers.add(frontier);
+            statesProcessed += frontier.length;
+            monitor.report(statesProcessed, frontier.length, layers.size() - 1);
+            long[] next = pool.invoke(new ExpandTask(board, frontier, 0, frontier.length, visited, monitor));
+            if (monitor.isStopped()) {
+                return null;
+            }
+            // 展开的过程中超出预算或者被取消，各个线程都会尽快停下来
+            long winKey = findWin(board, next);
+            if (winKey != -1) {
+                System.out.println("AI: 并行搜索找到解法！总共处理 " + statesProcessed + " 个状态。");
+                return reconstruct(board, layers, winKey);
+            }
+            if (monitor.checkLimits(statesProcessed)) {
+                return null;
+            }
+            frontier = next;
+        }
+        System.out.println("AI: 未找到解法（所有状态都已搜完）。总共处理 " + statesProcessed + " 个状态。");
+        return null;
+    }
+    //board只用来当模板，每个线程都会copy()一份自己的工作棋盘，所以board本身不会被改动
+
+    private static long findWin(SolverBoard board, long[] layer) {
+        for (long key : layer) {
+            if (StateCodec.isWin(key, board.getWidth(), board.getGoalX(), board.getGoalY())) {
+                return key;
+            }
+        }
+        return -1;
+    }
+
+    private static long[] reconstruct(SolverBoard template, List<long[]> layers, long winKey) {
+        SolverBoard board = template.copy();
+        long[] path = new long[layers.size() + 1];
+        path[layers.size()] = winKey;
+        int[] moves = new int[SolverBoard.MOVE_BUFFER_SIZE];
+        for (int depth = layers.size() - 1; depth >= 0; depth--) {
+            long[] layer = layers.get(depth);
+            board.load(path[depth + 1]);
+            int moveCount = board.generateMoves(moves);
+            boolean found = false;
+            for (int i = 0; i < moveCount && !found; i++) {
+                board.applyMove(moves[i]);
+                long key = board.getCanonicalKey();
+                board.undoMove(moves[i]);
+                if (Arrays.binarySearch(layer, key) >= 0) {
+                    path[depth] = key;
+                    found = true;
+                }
+            }
+            if (!found) {
+                System.err.println("AI: 并行搜索的路径在第 " + depth + " 层断开了。");
+                return null;
+            }
+        }
+        return path;
+    }
+    //滑块的每一步都能原路退回，所以一个状态的"上一步"一定在它自己的后继里面，只要在上一层里找到其中一个就行
+
+    private static class ExpandTask extends RecursiveTask<long[]> {
+        private final SolverBoard template;
+        private final long[] frontier;
+        private final int from;
+        private final int to;
+        private final StripedLongSet visited;
+        private final SearchMonitor monitor;
+
+        ExpandTask(SolverBoard template, long[] frontier, int from, int to, StripedLongSet visited, SearchMonitor monitor) {
+            this.template = template;
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.visited = visited;
+            this.monitor = monitor;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (monitor.isStopped()) {
+                return new long[0];
+            }
+            if (to - from <= SPLIT_THRESHOLD) {
+                return expand();
+            }
+            int middle = (from + to) >>> 1;
+            ExpandTask left = new ExpandTask(template, frontier, from, middle, visited, monitor);
+            left.fork();
+            long[] right = new ExpandTask(template, frontier, middle, to, visited, monitor).compute();
+            long[] leftResult = left.join();
+            long[] merged = Arrays.copyOf(leftResult, leftResult.length + right.length);
+            System.arraycopy(right, 0, merged, leftResult.length, right.length);
+            return merged;
+        }
+        //一半交给别的线程，一半自己做，两边的结果拼起来
+
+        private long[] expand() {
+            SolverBoard board = template.copy();
+            int[] moves = new int[SolverBoard.MOVE_BUFFER_SIZE];
+            long[] found = new long[Math.max(16, (to - from) * 2)];
+            int count = 0;
+            for (int index = from; index < to && !monitor.isStopped(); index++) {
+                board.load(frontier[index]);
+                int moveCount = board.generateMoves(moves);
+                for (int i = 0; i < moveCount; i++) {
+                    board.applyMove(moves[i]);
+                    long key = board.getCanonicalKey();
+                    board.undoMove(moves[i]);
+                    if (visited.add(key)) {
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = key;
+                    }
+                }
+            }
+            if (monitor.checkLimits(0)) {
+                return new long[0];
+            }
+            return Arrays.copyOf(found, count);
+        }
+        //每一小段展开完都检查一次时间和内存，状态数量由主线程每层检查一次
+    }
+    //展开frontier里[from, to)这一段状态的任务
+}
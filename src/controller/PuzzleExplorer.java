@@ -0,0 +1,424 @@
+package controller;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+* 这个类是离线的"布局空间"工具：把一组棋子（比如横刀立马的10个棋子）在棋盘上所有合法的摆法都列出来，
+* 算出每一个摆法离胜利的最少步数和它属于哪一个连通块，按难度排好序写进一个带索引的文件，
+* 以后出新关卡、每日挑战、"最难的布局"排行榜都可以直接从这个文件里挑，不用再手写在Board.initialize()里
+* 1.用LayoutEnumerator在同一个ForkJoinPool里并行列出所有摆法，换成getCanonicalKey()的代表编码以后排序去重，每个布局的下标就是它在这个有序数组里的位置
+* 2.用ForkJoinPool把所有布局切成很多小段，每个线程在自己的SolverBoard上生成后继，二分查找出后继的下标，
+*   得到整张图的邻接表（先并行数一遍每个布局有几个后继，再并行填一遍，两遍的结果放在同一个大数组里）
+* 3.有了邻接表以后，连通块和离胜利的步数都只要在这个数组上走一遍：
+*   连通块是对每个还没编号的布局做一次BFS；步数是从所有胜利布局同时出发做一次BFS，走不到的布局记-1（无解）
+* 4.文件里的布局按难度从难到易排（步数一样时按编码排），无解的放在最后，这个顺序叫"名次"：
+*   同一个步数的布局是连续的一段，countAtDistance()、firstRankAtDistance()可以直接定位；
+*   另外按编码排好序存了一份 编码->名次 的索引，rankOf()在上面二分查找
+* 5.文件用FileChannel.map()映射进内存，查询时不需要把整个文件读进来（和Tablebase一样）
+* 文件名类似 klotski_4x5_1-3_0-4-4-1-1-0-0-0.space，可以直接运行这个类的main()生成横刀立马这组棋子的文件
+ */
+public class PuzzleExplorer {
+    private static final int MAGIC = 0x4B4C5350;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 96;
+    //文件头：MAGIC，VERSION，宽，高，目标x，目标y，8种形状的个数，布局个数，连通块个数，最远步数，一共17个int，补齐到96字节
+    public static final String FILE_SUFFIX = ".space";
+    private static final int SPLIT_THRESHOLD = 1024;
+    //一段里的布局少于这个数就不再往下切了
+
+    private final int count;
+    private final int componentCount;
+    private final int maxDistance;
+    private final int[] levelFirst;
+    private final int[] levelCounts;
+    //步数为d的布局是从名次levelFirst[d]开始的levelCounts[d]个
+    private final int solvableCount;
+    private final LongBuffer rankedKeys;
+    private final ShortBuffer rankedDistances;
+    private final IntBuffer rankedComponents;
+    private final LongBuffer sortedKeys;
+    private final IntBuffer sortedRanks;
+
+    private PuzzleExplorer(int count, int componentCount, int maxDistance, int[] levelCounts, LongBuffer rankedKeys,
+                           ShortBuffer rankedDistances, IntBuffer rankedComponents, LongBuffer sortedKeys, IntBuffer sortedRanks) {
+        this.count = count;
+        this.componentCount = componentCount;
+        this.maxDistance = maxDistance;
+        this.levelCounts = levelCounts;
+        this.levelFirst = new int[levelCounts.length];
+        int first = 0;
+        for (int d = levelCounts.length - 1; d >= 0; d--) {
+            levelFirst[d] = first;
+            first += levelCounts[d];
+        }
+        // 名次是从难到易排的，所以从最大的步数开始累加
+        this.solvableCount = first;
+        this.rankedKeys = rankedKeys;
+        this.rankedDistances = rankedDistances;
+        this.rankedComponents = rankedComponents;
+        this.sortedKeys = sortedKeys;
+        this.sortedRanks = sortedRanks;
+    }
+
+    public static String fileName(int width, int height, int goalX, int goalY, int[] shapeCounts) {
+        return Tablebase.fileName(width, height, goalX, goalY, shapeCounts, FILE_SUFFIX);
+    }
+
+    public static boolean explore(int width, int height, int goalX, int goalY, int[] shapeCounts, File file) {
+        return explore(width, height, goalX, goalY, shapeCounts, file, ForkJoinPool.commonPool());
+    }
+
+    public static boolean explore(int width, int height, int goalX, int goalY, int[] shapeCounts, File file, ForkJoinPool pool) {
+        long startTime = System.currentTimeMillis();
+        long[] layouts = LayoutEnumerator.enumerate(width, height, shapeCounts, pool);
+        for (int i = 0; i < layouts.length; i++) {
+            layouts[i] = StateCodec.canonical(layouts[i], width, height, goalX);
+        }
+        Arrays.parallelSort(layouts);
+        int count = 0;
+        for (int i = 0; i < layouts.length; i++) {
+            if (i == 0 || layouts[i] != layouts[i - 1]) {
+                layouts[count++] = layouts[i];
+            }
+        }
+        long[] keys = Arrays.copyOf(layouts, count);
+        if (count == 0) {
+            System.out.println("布局空间: 这组棋子在棋盘上放不下，没有任何布局。");
+            return false;
+        }
+        System.out.println("布局空间: 一共 " + count + " 个本质不同的布局，开始并行建图...");
+
+        SolverBoard template = new SolverBoard(width, height);
+        template.setGoal(goalX, goalY);
+        int[] edgeStart = new int[count + 1];
+        pool.invoke(new NeighborTask(template, keys, 0, count, edgeStart, null));
+        for (int i = 0; i < count; i++) {
+            edgeStart[i + 1] += edgeStart[i];
+        }
+        // 第一遍只数后继的个数（放在edgeStart[i+1]里），加起来以后edgeStart[i]就是布局i的后继在edges里开始的位置
+        int[] edges = new int[edgeStart[count]];
+        pool.invoke(new NeighborTask(template, keys, 0, count, edgeStart, edges));
+
+        int[] components = new int[count];
+        Arrays.fill(components, -1);
+        int[] queue = new int[count];
+        int componentCount = 0;
+        for (int seed = 0; seed < count; seed++) {
+            if (components[seed] < 0) {
+                components[seed] = componentCount;
+                int tail = 0;
+                queue[tail++] = seed;
+                for (int head = 0; head < tail; head++) {
+                    int state = queue[head];
+                    for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                        if (components[edges[e]] < 0) {
+                            components[edges[e]] = componentCount;
+                            queue[tail++] = edges[e];
+                        }
+                    }
+                }
+                componentCount++;
+            }
+        }
+
+        int[] distances = new int[count];
+        Arrays.fill(distances, -1);
+        int tail = 0;
+        for (int i = 0; i < count; i++) {
+            if (StateCodec.isWin(keys[i], width, goalX, goalY)) {
+                distances[i] = 0;
+                queue[tail++] = i;
+            }
+        }
+        int maxDistance = 0;
+        for (int head = 0; head < tail; head++) {
+            int state = queue[head];
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                if (distances[edges[e]] < 0) {
+                    distances[edges[e]] = distances[state] + 1;
+                    maxDistance = distances[state] + 1;
+                    queue[tail++] = edges[e];
+                }
+            }
+        }
+        // 滑块的每一步都能原路退回，所以从胜利布局往外走的步数就是往胜利布局走的步数
+        if (maxDistance > Short.MAX_VALUE) {
+            System.out.println("布局空间: 最远的布局超过了 " + Short.MAX_VALUE + " 步，无法写进文件。");
+            return false;
+        }
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.parallelSort(order, (a, b) -> {
+            int da = distances[a] < 0 ? Integer.MIN_VALUE : distances[a];
+            int db = distances[b] < 0 ? Integer.MIN_VALUE : distances[b];
+            return da != db ? Integer.compare(db, da) : Long.compare(keys[a], keys[b]);
+        });
+        // 从难到易，无解的排在最后
+        int[] rankOf = new int[count];
+        int[] levelCounts = new int[maxDistance + 1];
+        for (int rank = 0; rank < count; rank++) {
+            rankOf[order[rank]] = rank;
+            if (distances[order[rank]] >= 0) {
+                levelCounts[distances[order[rank]]]++;
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(goalX);
+            out.writeInt(goalY);
+            for (int shape = 0; shape < StateCodec.SHAPE_CODE_COUNT; shape++) {
+                out.writeInt(shape < shapeCounts.length ? shapeCounts[shape] : 0);
+            }
+            out.writeInt(count);
+            out.writeInt(componentCount);
+            out.writeInt(maxDistance);
+            out.write(new byte[HEADER_BYTES - 17 * Integer.BYTES]);
+            for (int levelCount : levelCounts) {
+                out.writeInt(levelCount);
+            }
+            for (int rank = 0; rank < count; rank++) {
+                out.writeLong(keys[order[rank]]);
+            }
+            for (int rank = 0; rank < count; rank++) {
+                out.writeShort(distances[order[rank]]);
+            }
+            for (int rank = 0; rank < count; rank++) {
+                out.writeInt(components[order[rank]]);
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeLong(keys[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeInt(rankOf[i]);
+            }
+        } catch (IOException e) {
+            System.out.println("When the puzzle space is saving to " + file.getAbsolutePath() + ", something goes wrong: " + e.getMessage());
+            return false;
+        }
+        System.out.println("布局空间: " + count + " 个布局，" + edges.length + " 条边，" + componentCount + " 个连通块，有解的 "
+                + (count - countUnsolvable(distances)) + " 个，最远 " + maxDistance + " 步，耗时 "
+                + (System.currentTimeMillis() - startTime) + " ms，保存到 " + file.getAbsolutePath());
+        return true;
+    }
+    //列出所有布局，建图，算连通块和步数，按难度排好序写进文件；棋子放不下、步数太大或者写文件失败时返回false
+
+    private static int countUnsolvable(int[] distances) {
+        int unsolvable = 0;
+        for (int distance : distances) {
+            if (distance < 0) {
+                unsolvable++;
+            }
+        }
+        return unsolvable;
+    }
+
+    public static PuzzleExplorer load(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                System.out.println("The puzzle space file " + file.getAbsolutePath() + " is not valid.");
+                return null;
+            }
+            int countOffset = 24 + 4 * StateCodec.SHAPE_CODE_COUNT;
+            int count = buffer.getInt(countOffset);
+            int componentCount = buffer.getInt(countOffset + 4);
+            int maxDistance = buffer.getInt(countOffset + 8);
+            long levelsOffset = HEADER_BYTES;
+            long rankedKeysOffset = levelsOffset + (long) (maxDistance + 1) * Integer.BYTES;
+            long distancesOffset = rankedKeysOffset + (long) count * Long.BYTES;
+            long componentsOffset = distancesOffset + (long) count * Short.BYTES;
+            long sortedKeysOffset = componentsOffset + (long) count * Integer.BYTES;
+            long sortedRanksOffset = sortedKeysOffset + (long) count * Long.BYTES;
+            if (count < 0 || maxDistance < 0 || buffer.capacity() < sortedRanksOffset + (long) count * Integer.BYTES) {
+                System.out.println("The puzzle space file " + file.getAbsolutePath() + " is truncated.");
+                return null;
+            }
+            int[] levelCounts = new int[maxDistance + 1];
+            for (int d = 0; d <= maxDistance; d++) {
+                levelCounts[d] = buffer.getInt((int) levelsOffset + d * Integer.BYTES);
+            }
+            LongBuffer rankedKeys = buffer.position((int) rankedKeysOffset).slice().asLongBuffer();
+            ShortBuffer rankedDistances = buffer.position((int) distancesOffset).slice().asShortBuffer();
+            IntBuffer rankedComponents = buffer.position((int) componentsOffset).slice().asIntBuffer();
+            LongBuffer sortedKeys = buffer.position((int) sortedKeysOffset).slice().asLongBuffer();
+            IntBuffer sortedRanks = buffer.position((int) sortedRanksOffset).slice().asIntBuffer();
+            return new PuzzleExplorer(count, componentCount, maxDistance, levelCounts, rankedKeys, rankedDistances,
+                    rankedComponents, sortedKeys, sortedRanks);
+        } catch (IOException e) {
+            System.out.println("When we get the puzzle space from " + file.getAbsolutePath() + " something goes wrong: " + e.getMessage());
+            return null;
+        }
+    }
+    //把文件映射进内存，文件不对时返回null
+
+    public int size() {
+        return count;
+    }
+
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+    //最难的有解布局离胜利的步数
+
+    public int getSolvableCount() {
+        return solvableCount;
+    }
+    //有解的布局个数，名次在它之后的都是无解的
+
+    public int countAtDistance(int distance) {
+        if (distance < 0 || distance > maxDistance) {
+            return 0;
+        }
+        return levelCounts[distance];
+    }
+
+    public int firstRankAtDistance(int distance) {
+        if (distance < 0 || distance > maxDistance) {
+            return -1;
+        }
+        return levelFirst[distance];
+    }
+    //步数为distance的布局是名次 firstRankAtDistance(d) 开始的 countAtDistance(d) 个
+
+    public long layoutAt(int rank) {
+        return rankedKeys.get(rank);
+    }
+    //第rank名的布局（0是最难的），返回的是代表编码，可以用SolverBoard.load()摆出来
+
+    public int distanceAt(int rank) {
+        return rankedDistances.get(rank);
+    }
+    //-1表示无解
+
+    public int componentAt(int rank) {
+        return rankedComponents.get(rank);
+    }
+    //连通块的编号，编号一样的两个布局可以互相走到
+
+    public int rankOf(long canonicalKey) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = sortedKeys.get(mid);
+            if (midKey < canonicalKey) {
+                low = mid + 1;
+            } else if (midKey > canonicalKey) {
+                high = mid - 1;
+            } else {
+                return sortedRanks.get(mid);
+            }
+        }
+        return -1;
+    }
+    //在 编码->名次 的索引上二分查找，不是这组棋子的布局时返回-1
+
+    public int distance(long canonicalKey) {
+        int rank = rankOf(canonicalKey);
+        return rank < 0 ? -1 : distanceAt(rank);
+    }
+
+    private static class NeighborTask extends RecursiveAction {
+        private final SolverBoard template;
+        private final long[] keys;
+        private final int from;
+        private final int to;
+        private final int[] edgeStart;
+        private final int[] edges;
+        //edges是null时只数个数，写进edgeStart[i+1]；不是null时按edgeStart[i]开始的位置填进去
+
+        NeighborTask(SolverBoard template, long[] keys, int from, int to, int[] edgeStart, int[] edges) {
+            this.template = template;
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+            this.edgeStart = edgeStart;
+            this.edges = edges;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                expand();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new NeighborTask(template, keys, from, middle, edgeStart, edges),
+                    new NeighborTask(template, keys, middle, to, edgeStart, edges));
+        }
+
+        private void expand() {
+            SolverBoard board = template.copy();
+            int[] moves = new int[SolverBoard.MOVE_BUFFER_SIZE];
+            int[] found = new int[SolverBoard.MOVE_BUFFER_SIZE];
+            for (int i = from; i < to; i++) {
+                board.load(keys[i]);
+                int moveCount = board.generateMoves(moves);
+                int foundCount = 0;
+                for (int m = 0; m < moveCount; m++) {
+                    board.applyMove(moves[m]);
+                    int neighbor = Arrays.binarySearch(keys, board.getCanonicalKey());
+                    board.undoMove(moves[m]);
+                    if (neighbor >= 0 && !contains(found, foundCount, neighbor)) {
+                        found[foundCount++] = neighbor;
+                    }
+                }
+                // 镜像的两步会走到同一个代表布局，只记一次
+                if (edges == null) {
+                    edgeStart[i + 1] = foundCount;
+                } else {
+                    System.arraycopy(found, 0, edges, edgeStart[i], foundCount);
+                }
+            }
+        }
+        //每个线程自己copy()一块工作棋盘，各写各的那一段数组，不需要加锁
+
+        private static boolean contains(int[] array, int length, int value) {
+            for (int i = 0; i < length; i++) {
+                if (array[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public static void main(String[] args) {
+        SolverBoard board = AISolver.toSolverBoard(new Board());
+        int[] shapeCounts = board.getShapeCounts();
+        String name = fileName(board.getWidth(), board.getHeight(), board.getGoalX(), board.getGoalY(), shapeCounts);
+        File file = new File(args.length > 0 ? args[0] : name);
+        if (!explore(board.getWidth(), board.getHeight(), board.getGoalX(), board.getGoalY(), shapeCounts, file)) {
+            return;
+        }
+        PuzzleExplorer explorer = load(file);
+        if (explorer == null) {
+            return;
+        }
+        System.out.println("横刀立马的开局离胜利 " + explorer.distance(board.getCanonicalKey()) + " 步，排在第 "
+                + explorer.rankOf(board.getCanonicalKey()) + " 名。");
+        System.out.println("最难的布局要走 " + explorer.getMaxDistance() + " 步，一共有 "
+                + explorer.countAtDistance(explorer.getMaxDistance()) + " 个。");
+    }
+    //离线生成横刀立马这组棋子的布局空间文件，可以传一个参数指定文件名
+}
@@ -0,0 +1,28 @@
+package controller;
+
+/*
+* AI的几种求解方式，new AISolver(模式) 的时候选一种：
+* 1.TABLEBASE：先查残局库（见Tablebase），这组棋子的残局库还没在内存里（没有，或者preloadDefault()还没准备好）时再用SESSION的方式，
+*   求解时不会去读文件或者生成，这是默认的方式
+* 2.BREADTH_FIRST：单向BFS
+* 3.BIDIRECTIONAL：双向BFS，反向从所有的胜利状态同时出发
+* 4.PARALLEL：并行的单向BFS，每一层的状态分给所有CPU核一起展开，适合自己摆的、状态很多的棋盘
+* 5.A_STAR：A*搜索，优先展开"已走步数+估计剩余步数"最小的状态（估计方法见SolverBoard.estimateDistance()）
+* 6.IDA_STAR：迭代加深的A*，只在一块棋盘上深度优先地走，占用的内存基本是固定的，适合同时跑很多个求解
+* 7.SESSION：用SolverSession，反向BFS的结果在同一局里一直留着，玩家走了几步以后再求解时直接查表或者接着上一次往外搜
+* 8.BEAM：束搜索（见HeuristicSearch.beam()），时间到了也会给出目前最好的一段走法，给限时模式用；
+*   残局库已经在内存里时直接查表，但不会为了它去读文件或者生成
+* 9.SLIDING：按"一个棋子连续滑动任意几格（包括拐弯）算一步"的计法做单向BFS（见KlotskiSearch.slidingBreadthFirst()），
+*   解的滑动次数最少（"横刀立马"是81步），返回的仍然是一格一格的状态编码，不查也不记解法缓存（缓存里记的是按格计的步数）
+ */
+public enum SearchMode {
+    TABLEBASE,
+    BREADTH_FIRST,
+    BIDIRECTIONAL,
+    PARALLEL,
+    A_STAR,
+    IDA_STAR,
+    SESSION,
+    BEAM,
+    SLIDING
+}
@@ -0,0 +1,167 @@
+package controller;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+* 这个类用来控制一次AI求解：什么时候该停下来，以及把搜索进度告诉界面
+* 1.预算：时间上限（毫秒）、状态数量上限、内存上限（默认是最大堆内存的85%），任何一个超了搜索就会停下来返回null，
+*   这样不管棋盘多复杂，一次求解都不会一直占着一个CPU核，也不会把内存用光
+*   内存算的是"上一次GC以后堆里还活着的"加上堆外的direct buffer（LongIntHashMap放在堆外时用的），
+*   还没回收的垃圾不算，所以不会因为GC还没来得及做就把搜索停掉（见usedMemory()）
+* 2.cancel()可以在任何线程里调用，搜索会在很短的时间内发现并停下来
+* 3.setProgressListener()设置一个回调，搜索过程中大约每隔REPORT_INTERVAL_MILLIS毫秒会把
+*   已处理的状态数、每秒处理的状态数、当前队列（这一层）的大小、当前的深度 报告一次
+* 用法：搜索里每处理一个状态调用一次tick()，它返回true就说明该停下来了，停下来的原因用getStopReason()查看
+ */
+public class SearchMonitor {
+    public interface ProgressListener {
+        void onProgress(long statesProcessed, long statesPerSecond, long frontierSize, int depth);
+    }
+    //回调是在搜索线程里调用的，界面那边要自己切回Swing的线程（比如SwingWorker的publish()）
+
+    public static final long NO_LIMIT = Long.MAX_VALUE;
+    public static final double DEFAULT_MEMORY_FRACTION = 0.85;
+    public static final long REPORT_INTERVAL_MILLIS = 250;
+    private static final int CHECK_INTERVAL = 4096;
+    //每处理这么多个状态才真正检查一次时间和内存，平时tick()只读一个volatile变量
+    private static final List<MemoryPoolMXBean> HEAP_POOLS = new ArrayList<>();
+    private static BufferPoolMXBean directPool;
+    static {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                HEAP_POOLS.add(pool);
+            }
+        }
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                directPool = pool;
+            }
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final long deadlineNanos;
+    private final long maxStates;
+    private final long maxMemoryBytes;
+    private volatile boolean stopped;
+    private volatile boolean cancelled;
+    private volatile String stopReason;
+    private ProgressListener progressListener;
+    private long lastReportNanos = startNanos;
+    private long lastReportStates;
+
+    public SearchMonitor() {
+        this(NO_LIMIT, NO_LIMIT);
+    }
+
+    public SearchMonitor(long timeLimitMillis, long maxStates) {
+        this(timeLimitMillis, maxStates, (long) (Runtime.getRuntime().maxMemory() * DEFAULT_MEMORY_FRACTION));
+    }
+
+    public SearchMonitor(long timeLimitMillis, long maxStates, long maxMemoryBytes) {
+        this.deadlineNanos = timeLimitMillis == NO_LIMIT ? NO_LIMIT : startNanos + timeLimitMillis * 1000000L;
+        this.maxStates = maxStates;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+    //时间上限和状态数量上限可以传NO_LIMIT表示不限制
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        stop("已被取消");
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public String getStopReason() {
+        return stopReason;
+    }
+    //没有停下来时返回null
+
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1000000L;
+    }
+
+    public boolean tick(long statesProcessed, long frontierSize, int depth) {
+        if ((statesProcessed & (CHECK_INTERVAL - 1)) != 0) {
+            return stopped;
+        }
+        if (checkLimits(statesProcessed)) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now - lastReportNanos >= REPORT_INTERVAL_MILLIS * 1000000L) {
+            report(statesProcessed, frontierSize, depth, now);
+        }
+        return false;
+    }
+    //单线程的搜索每处理一个状态调用一次，返回true时应该马上停下来
+
+    public synchronized boolean checkLimits(long statesProcessed) {
+        if (stopped) {
+            return true;
+        }
+        if (statesProcessed > maxStates) {
+            stop("处理的状态超过了 " + maxStates + " 个");
+        } else if (deadlineNanos != NO_LIMIT && System.nanoTime() - deadlineNanos > 0) {
+            stop("超过了时间上限");
+        } else {
+            if (usedMemory() > maxMemoryBytes) {
+                stop("占用的内存超过了上限");
+            }
+        }
+        return stopped;
+    }
+    //检查一遍所有的上限，多线程的搜索可以在各个线程里直接调用这个
+
+    public static long usedMemory() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : HEAP_POOLS) {
+            MemoryUsage afterGc = pool.getCollectionUsage();
+            used += afterGc != null ? afterGc.getUsed() : pool.getUsage().getUsed();
+        }
+        if (directPool != null) {
+            used += directPool.getMemoryUsed();
+        }
+        return used;
+    }
+    //每个堆内存池上一次GC以后还剩多少（不支持的内存池用现在的用量），再加上所有direct buffer的字节数
+
+    public synchronized void report(long statesProcessed, long frontierSize, int depth) {
+        report(statesProcessed, frontierSize, depth, System.nanoTime());
+    }
+    //不管隔了多久都报告一次，比如并行搜索每走完一层调用一次
+
+    private synchronized void report(long statesProcessed, long frontierSize, int depth, long now) {
+        long elapsed = Math.max(1, now - lastReportNanos);
+        long statesPerSecond = (statesProcessed - lastReportStates) * 1000000000L / elapsed;
+        lastReportNanos = now;
+        lastReportStates = statesProcessed;
+        if (progressListener != null) {
+            progressListener.onProgress(statesProcessed, statesPerSecond, frontierSize, depth);
+        }
+    }
+
+    private synchronized void stop(String reason) {
+        if (!stopped) {
+            stopReason = reason;
+            stopped = true;
+            System.out.println("AI: 搜索中止，原因：" + reason + "。");
+        }
+    }
+}
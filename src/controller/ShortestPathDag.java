@@ -0,0 +1,243 @@
+package controller;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+* 这个类是"所有最短解"组成的有向无环图（DAG）：同一个布局往往有很多条一样短的解法，它把这些解法一次都找出来，
+* 可以数一数一共有多少条，也可以一条一条地拿出来（教学、"换一种提示"时用）
+* 1.只做一次BFS：从起点一层一层往外搜，搜到第一个胜利状态所在的那一层就停下来（这一层不再往外展开），
+*   每个状态记下自己在第几层，起点到它的最短步数就是层数
+* 2.再把走过的状态倒着过一遍（BFS的顺序倒过来正好是从最后一层往第一层）：
+*   一个状态的"最短解条数" = 它走一步能到的所有下一层状态的最短解条数之和，胜利层的状态是1，
+*   条数可能非常大，所以用BigInteger；条数不是0的状态顺便记下它在DAG里的所有下一步（孩子），
+*   这一遍和BFS一样每个状态只展开一次，不会重新搜索
+* 3.solutions()按深度优先的顺序懒加载地一条条给出最短解，每一条都是一串状态编码，只是在DAG里沿着孩子走，
+*   条数不是0的状态一定能走到胜利，所以不会走进死胡同，拿第K条只要 K*路径长度 的工夫
+* 4.solution(i)直接按序号给出第i条（0 <= i < getSolutionCount()），用每个孩子的条数跳过前面的解，不用一条条数过去
+* 状态用的是getCanonicalKey()，左右镜像、同形状棋子互换的布局算同一个状态，所以数的是"本质不同"的最短解
+* 用法：ShortestPathDag.build(棋盘, monitor)，被叫停或者无解时返回null，得到的状态编码路径用起点棋盘的translatePath()翻译
+ */
+public class ShortestPathDag {
+    private final StateList states;
+    //BFS走过的状态，父状态下标的位置用来记它在第几层
+    private final int length;
+    //最短解的步数，也就是胜利状态所在的层
+    private final BigInteger[] counts;
+    //每个状态到胜利的最短解条数，是0的地方是null
+    private final int[] childStart;
+    private final int[] childEnd;
+    private final int[] children;
+    //状态i在DAG里的孩子是 children[childStart[i]] 到 children[childEnd[i]-1]
+
+    private ShortestPathDag(StateList states, int length, BigInteger[] counts, int[] childStart, int[] childEnd, int[] children) {
+        this.states = states;
+        this.length = length;
+        this.counts = counts;
+        this.childStart = childStart;
+        this.childEnd = childEnd;
+        this.children = children;
+    }
+
+    public static ShortestPathDag build(SolverBoard start, SearchMonitor monitor) {
+        SolverBoard board = start.copy();
+        StateList states = new StateList();
+        LongIntHashMap indexOf = new LongIntHashMap();
+        //状态编码 -> 在states里的下标
+        states.add(board.getCanonicalKey(), 0);
+        indexOf.put(board.getCanonicalKey(), 0);
+        int[] moves = new int[SolverBoard.MOVE_BUFFER_SIZE];
+        int winDepth = board.isWin() ? 0 : -1;
+        long statesProcessed = 0;
+        for (int head = 0; head < states.size(); head++) {
+            int depth = states.getParent(head);
+            if (depth == winDepth) {
+                break;
+            }
+            // 到了胜利的那一层就不用再往外展开了，BFS是按层加进来的，后面的状态都在这一层
+            if (monitor.tick(statesProcessed++, states.size() - head, depth)) {
+                return null;
+            }
+            board.load(states.getKey(head));
+            int moveCount = board.generateMoves(moves);
+            for (int i = 0; i < moveCount; i++) {
+                board.applyMove(moves[i]);
+                long key = board.getCanonicalKey();
+                if (!indexOf.containsKey(key)) {
+                    indexOf.put(key, states.add(key, depth + 1));
+                    if (winDepth < 0 && board.isWin()) {
+                        winDepth = depth + 1;
+                    }
+                }
+                board.undoMove(moves[i]);
+            }
+        }
+        if (winDepth < 0) {
+            System.out.println("AI: 未找到解法（队列已空）。总共处理 " + statesProcessed + " 个状态。");
+            return null;
+        }
+
+        int size = states.size();
+        BigInteger[] counts = new BigInteger[size];
+        int[] childStart = new int[size];
+        int[] childEnd = new int[size];
+        int[] children = new int[1024];
+        int childCount = 0;
+        for (int index = size - 1; index >= 0; index--) {
+            int depth = states.getParent(index);
+            board.load(states.getKey(index));
+            childStart[index] = childCount;
+            if (depth == winDepth) {
+                if (board.isWin()) {
+                    counts[index] = BigInteger.ONE;
+                }
+            } else {
+                BigInteger count = BigInteger.ZERO;
+                int moveCount = board.generateMoves(moves);
+                for (int i = 0; i < moveCount; i++) {
+                    board.applyMove(moves[i]);
+                    int child = indexOf.get(board.getCanonicalKey());
+                    board.undoMove(moves[i]);
+                    if (child == LongIntHashMap.NO_VALUE || states.getParent(child) != depth + 1 || counts[child] == null
+                            || contains(children, childStart[index], childCount, child)) {
+                        continue;
+                    }
+                    // 镜像的两步会走到同一个代表状态，只算一次
+                    if (childCount == children.length) {
+                        children = Arrays.copyOf(children, childCount * 2);
+                    }
+                    children[childCount++] = child;
+                    count = count.add(counts[child]);
+                }
+                if (count.signum() > 0) {
+                    counts[index] = count;
+                } else {
+                    childCount = childStart[index];
+                }
+            }
+            childEnd[index] = childCount;
+        }
+        // 倒着过的时候下一层已经全部算好了，每个状态只展开一次
+        System.out.println("AI: 最短解是 " + winDepth + " 步，一共有 " + counts[0] + " 条。总共处理 " + statesProcessed + " 个状态。");
+        return new ShortestPathDag(states, winDepth, counts, childStart, childEnd, Arrays.copyOf(children, childCount));
+    }
+    //start不会被改动；被monitor叫停或者无解时返回null
+
+    private static boolean contains(int[] array, int from, int to, int value) {
+        for (int i = from; i < to; i++) {
+            if (array[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getLength() {
+        return length;
+    }
+    //最短解的步数
+
+    public BigInteger getSolutionCount() {
+        return counts[0];
+    }
+    //本质不同的最短解一共有多少条
+
+    public int getStateCount() {
+        return states.size();
+    }
+    //BFS一共走过了多少个状态
+
+    public int getDagStateCount() {
+        int count = 0;
+        for (BigInteger c : counts) {
+            if (c != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+    //在某条最短解上的状态有多少个
+
+    public long[] solution(BigInteger rank) {
+        if (rank.signum() < 0 || rank.compareTo(counts[0]) >= 0) {
+            throw new IndexOutOfBoundsException("Rank: " + rank + ", Count: " + counts[0]);
+        }
+        long[] keyPath = new long[length + 1];
+        int index = 0;
+        keyPath[0] = states.getKey(0);
+        BigInteger remaining = rank;
+        for (int step = 1; step <= length; step++) {
+            int next = -1;
+            for (int c = childStart[index]; c < childEnd[index] && next < 0; c++) {
+                BigInteger childCount = counts[children[c]];
+                if (remaining.compareTo(childCount) < 0) {
+                    next = children[c];
+                } else {
+                    remaining = remaining.subtract(childCount);
+                }
+            }
+            index = next;
+            keyPath[step] = states.getKey(index);
+        }
+        return keyPath;
+    }
+    //第rank条最短解（从0开始，和solutions()给出的顺序一样）
+
+    public Iterator<long[]> solutions() {
+        return new Iterator<long[]>() {
+            private final int[] path = new int[length + 1];
+            private final int[] cursor = new int[length + 1];
+            //path[d]是第d步所在的状态，cursor[d]是path[d]正在走的那个孩子在children里的位置
+            private boolean ready = counts[0] != null;
+            //ready为true时path里放着下一条还没有给出去的解
+
+            {
+                if (ready) {
+                    descend(0);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return ready;
+            }
+
+            @Override
+            public long[] next() {
+                if (!ready) {
+                    throw new NoSuchElementException();
+                }
+                long[] keyPath = new long[length + 1];
+                for (int d = 0; d <= length; d++) {
+                    keyPath[d] = states.getKey(path[d]);
+                }
+                ready = advance();
+                return keyPath;
+            }
+
+            private void descend(int from) {
+                for (int d = from; d < length; d++) {
+                    cursor[d] = childStart[path[d]];
+                    path[d + 1] = children[cursor[d]];
+                }
+            }
+            //从第from步开始每一步都走第一个孩子，一直走到胜利
+
+            private boolean advance() {
+                for (int d = length - 1; d >= 0; d--) {
+                    if (cursor[d] + 1 < childEnd[path[d]]) {
+                        cursor[d]++;
+                        path[d + 1] = children[cursor[d]];
+                        descend(d + 1);
+                        return true;
+                    }
+                }
+                return false;
+            }
+            //找到最深的一个还有下一个孩子的地方换成下一个孩子，后面的重新走第一个孩子
+        };
+    }
+    //按深度优先的顺序一条条给出所有最短解，每次next()才去找下一条，不会一次把所有解都放进内存
+}
@@ -0,0 +1,301 @@
+package controller;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+* 这个类是跨越多次启动的"解法缓存"：AI每求出一个解，就把解法上每个布局离胜利的最少步数记下来，存进一个文件，
+* 下次（哪怕是重新打开了程序）再问到这些布局时，直接沿着"离胜利少一步"的布局一路查表走下去，不用再搜索
+* 1.key是SolverBoard.getCanonicalKey()再混进棋盘大小和目标位置，镜像、同形状棋子互换的布局共用一项，
+*   每一项只占一个long（key）、一个short（棋盘大小和目标位置）和一个short（步数），文件里一项12个字节
+* 2.最多记MAX_ENTRIES项（大约两兆多的文件），超出时按"最久没用过"（LRU）一次去掉四分之一，
+*   每一项都记着最后一次被用到的时间戳，查表和写入都会刷新它
+* 3.文件和users.dat一样放在程序运行的目录下，第一次用到缓存时才去读（懒加载）；记下新的解时只标记"有改动"，
+*   由一个后台线程在FLUSH_DELAY_MILLIS以后把这段时间里所有的改动一次写回去，程序退出时也会再写一次（flush()），
+*   求解的线程不用等写文件；写的时候先写到临时文件再改名，写到一半程序被关掉也不会把原来的文件弄坏
+* 4.只记最短解（KlotskiSearch.search()的各个模式求出来的都是最短解），所以查到的步数一定是最少步数
+* 用法：SolutionCache.getDefault().path(棋盘) 查一条解法，查不到返回null；求出解以后用record(棋盘, 状态编码路径)记下来
+* 残局库已经在内存里时KlotskiSearch.search()直接查残局库，不会查也不会记这个缓存
+ */
+public class SolutionCache {
+    private static final int MAGIC = 0x4B4C5343;
+    private static final int VERSION = 1;
+    public static final String DEFAULT_FILE_NAME = "klotski_solutions.cache";
+    public static final int MAX_ENTRIES = 200000;
+    public static final int ENTRY_BYTES = Long.BYTES + Short.BYTES + Short.BYTES;
+    public static final long FLUSH_DELAY_MILLIS = 5000;
+    //第一次有改动以后过多久写回文件，这段时间里的其他改动一起写
+
+    private static SolutionCache defaultCache;
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "solution-cache-writer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    //所有缓存共用的写文件线程
+
+    private final File file;
+    private final int maxEntries;
+    private boolean loaded;
+    private LongIntHashMap slots = new LongIntHashMap();
+    //混合以后的key -> 下面几个数组里的下标
+    private long[] keys = new long[1024];
+    private short[] signatures = new short[1024];
+    private short[] distances = new short[1024];
+    private long[] lastUsed = new long[1024];
+    private int size;
+    private long clock;
+    private boolean dirty;
+    //有还没写回文件的改动
+    private boolean flushScheduled;
+    private final Object writeLock = new Object();
+    //同一时间只有一个flush()在写文件（后台线程和退出时的钩子可能同时来）
+
+    public SolutionCache(File file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = Math.max(16, maxEntries);
+    }
+
+    public static synchronized SolutionCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new SolutionCache(new File(DEFAULT_FILE_NAME), MAX_ENTRIES);
+            Runtime.getRuntime().addShutdownHook(new Thread(defaultCache::flush, "solution-cache-shutdown"));
+        }
+        return defaultCache;
+    }
+    //整个程序共用的缓存，文件名是DEFAULT_FILE_NAME，程序退出时把还没写回的改动写进文件
+
+    public static int signature(SolverBoard board) {
+        return (board.getWidth() << 12) | (board.getHeight() << 8) | (board.getGoalX() << 4) | board.getGoalY();
+    }
+    //棋盘大小和目标位置各占4位，不同大小的棋盘即使状态编码一样也不会混在一起
+
+    private static long mix(long canonicalKey, int signature) {
+        return canonicalKey ^ (signature * 0x9E3779B97F4A7C15L);
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return size;
+    }
+
+    public synchronized int distance(SolverBoard board) {
+        ensureLoaded();
+        return distance(board.getCanonicalKey(), signature(board));
+    }
+    //这个布局离胜利的最少步数，缓存里没有时返回-1
+
+    private int distance(long canonicalKey, int signature) {
+        int slot = slots.get(mix(canonicalKey, signature));
+        if (slot == LongIntHashMap.NO_VALUE || keys[slot] != canonicalKey || signatures[slot] != (short) signature) {
+            return -1;
+        }
+        lastUsed[slot] = ++clock;
+        return distances[slot];
+    }
+
+    public synchronized long[] path(SolverBoard start) {
+        ensureLoaded();
+        int signature = signature(start);
+        int remaining = distance(start.getCanonicalKey(), signature);
+        if (remaining < 0) {
+            return null;
+        }
+        SolverBoard board = start.copy();
+        long[] keyPath = new long[remaining + 1];
+        keyPath[0] = board.getCanonicalKey();
+        int[] moves = new int[SolverBoard.MOVE_BUFFER_SIZE];
+        for (int step = 1; step < keyPath.length; step++) {
+            int moveCount = board.generateMoves(moves);
+            boolean found = false;
+            for (int i = 0; i < moveCount && !found; i++) {
+                board.applyMove(moves[i]);
+                if (distance(board.getCanonicalKey(), signature) == remaining - step) {
+                    keyPath[step] = board.getCanonicalKey();
+                    found = true;
+                } else {
+                    board.undoMove(moves[i]);
+                }
+            }
+            if (!found) {
+                return null;
+            }
+            //中间的布局被LRU去掉了，这时当作没有缓存，让调用者重新搜索
+        }
+        System.out.println("AI: 从解法缓存中直接得到了 " + remaining + " 步的解法。");
+        return keyPath;
+    }
+    //和Tablebase.path()一样返回一串状态编码，start本身不会被改动，缓存里没有（或者不完整）时返回null
+
+    public synchronized void record(SolverBoard start, long[] keyPath) {
+        if (keyPath == null || keyPath.length == 0 || keyPath.length - 1 > Short.MAX_VALUE) {
+            return;
+        }
+        ensureLoaded();
+        int signature = signature(start);
+        boolean changed = false;
+        for (int i = 0; i < keyPath.length; i++) {
+            changed |= put(keyPath[i], signature, keyPath.length - 1 - i);
+        }
+        if (size > maxEntries) {
+            evict();
+        }
+        if (changed) {
+            dirty = true;
+            if (!flushScheduled) {
+                flushScheduled = true;
+                WRITER.schedule(this::flush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+    //把一条最短解上的每个布局都记下来，第i个布局离胜利 路径长度-i 步；有新的内容时交给后台线程过一会儿再写回文件，这里不等
+
+    private boolean put(long canonicalKey, int signature, int distance) {
+        long mixed = mix(canonicalKey, signature);
+        int slot = slots.get(mixed);
+        if (slot != LongIntHashMap.NO_VALUE && keys[slot] == canonicalKey && signatures[slot] == (short) signature) {
+            lastUsed[slot] = ++clock;
+            if (distances[slot] == distance) {
+                return false;
+            }
+            distances[slot] = (short) distance;
+            return true;
+        }
+        if (slot != LongIntHashMap.NO_VALUE) {
+            return false;
+        }
+        //两个不同的布局混合以后撞在同一个key上（几乎不可能），先来的那个留着
+        if (size == keys.length) {
+            int newCapacity = size * 2;
+            keys = Arrays.copyOf(keys, newCapacity);
+            signatures = Arrays.copyOf(signatures, newCapacity);
+            distances = Arrays.copyOf(distances, newCapacity);
+            lastUsed = Arrays.copyOf(lastUsed, newCapacity);
+        }
+        keys[size] = canonicalKey;
+        signatures[size] = (short) signature;
+        distances[size] = (short) distance;
+        lastUsed[size] = ++clock;
+        slots.put(mixed, size);
+        size++;
+        return true;
+    }
+
+    private void evict() {
+        int keep = maxEntries * 3 / 4;
+        long[] order = Arrays.copyOf(lastUsed, size);
+        Arrays.sort(order);
+        long threshold = order[size - keep];
+        //时间戳不会重复，比它新的（包括它自己）正好keep个
+        int kept = 0;
+        slots = new LongIntHashMap(keep);
+        for (int i = 0; i < size; i++) {
+            if (lastUsed[i] >= threshold) {
+                keys[kept] = keys[i];
+                signatures[kept] = signatures[i];
+                distances[kept] = distances[i];
+                lastUsed[kept] = lastUsed[i];
+                slots.put(mix(keys[kept], signatures[kept] & 0xFFFF), kept);
+                kept++;
+            }
+        }
+        size = kept;
+    }
+    //一次去掉最久没用过的四分之一，这样不用每加一项都找一遍最旧的
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.out.println("The solution cache file " + file.getAbsolutePath() + " is not valid, starting with an empty cache.");
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long key = in.readLong();
+                int signature = in.readUnsignedShort();
+                int distance = in.readShort();
+                put(key, signature, distance);
+            }
+            //文件里是按从旧到新的顺序写的，依次放进来时间戳的先后也就保留下来了
+            if (size > maxEntries) {
+                evict();
+            }
+        } catch (IOException e) {
+            System.out.println("When we get the solution cache from " + file.getAbsolutePath() + " something goes wrong: " + e.getMessage());
+        }
+    }
+    //第一次用到缓存时才读文件，文件不存在或者坏了就从空的缓存开始
+
+    public void flush() {
+        synchronized (writeLock) {
+            long[] savedKeys;
+            short[] savedSignatures;
+            short[] savedDistances;
+            synchronized (this) {
+                flushScheduled = false;
+                if (!dirty) {
+                    return;
+                }
+                dirty = false;
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> Long.compare(lastUsed[a], lastUsed[b]));
+                savedKeys = new long[size];
+                savedSignatures = new short[size];
+                savedDistances = new short[size];
+                for (int i = 0; i < size; i++) {
+                    savedKeys[i] = keys[order[i]];
+                    savedSignatures[i] = signatures[order[i]];
+                    savedDistances[i] = distances[order[i]];
+                }
+            }
+            // 只在锁里拷一份，写文件的时候求解线程照样可以查、可以记
+            if (!save(savedKeys, savedSignatures, savedDistances)) {
+                synchronized (this) {
+                    dirty = true;
+                }
+            }
+        }
+    }
+    //把还没写回的改动写进文件，没有改动时什么都不做；平时由后台线程调用，退出时由关闭钩子调用，也可以自己调用
+
+    private boolean save(long[] savedKeys, short[] savedSignatures, short[] savedDistances) {
+        File temp = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(savedKeys.length);
+            for (int i = 0; i < savedKeys.length; i++) {
+                out.writeLong(savedKeys[i]);
+                out.writeShort(savedSignatures[i]);
+                out.writeShort(savedDistances[i]);
+            }
+        } catch (IOException e) {
+            System.out.println("When the solution cache is saving to " + temp.getAbsolutePath() + ", something goes wrong: " + e.getMessage());
+            return false;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("When the solution cache is saving to " + file.getAbsolutePath() + ", something goes wrong: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+    //按最后一次用到的时间从旧到新写，下次读进来时LRU的顺序不变
+}
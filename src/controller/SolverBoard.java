@@ -0,0 +1,429 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+* 这个类是专门给AI搜索用的"工作棋盘"，和Board的区别在于：
+* 1.它只用几个int数组记录棋子，不用HashMap，也没有Block对象，搜索时整个过程只用这一块棋盘，不再为每个状态深拷贝
+* 2.applyMove()在原地走一步，undoMove()在原地退回一步，走完以后用getKey()就能拿到新状态的编码（编码规则见StateCodec），
+*   编码是跟着移动增量更新的，不需要重新扫描整个棋盘
+* 3.load()可以把一个状态编码还原到这块棋盘上，还原出来的棋子没有真实的ID（记为0），搜索本来也不需要ID
+* 4.generateMoves()把当前所有合法的移动写进一个int数组里，每个移动用 棋子下标*4+方向 表示，方向的顺序和Direction一样；
+*   它不是把每个棋子的四个方向都试一遍，而是从空格出发，只看挨着空格的那几个棋子（见generateMoves()）
+* 5.translatePath()把搜索得到的一串状态编码翻译回真正的移动（带真实ID），只在最后找到答案时调用一次
+* 6.getCanonicalKey()把左右镜像的两个布局当成同一个状态（胜利位置对称时才这样做，见StateCodec.canonical()），
+*   镜像布局的编码mirrorKey也是跟着移动增量更新的，搜索时用它判重可以让要走的状态少将近一半
+* 7.estimateDistance()估计离胜利至少还要走几步，给A*和IDA*用
+* 8.棋盘上哪些格子被占着另外用一个long（occupancy）记着，canMove()查MoveMasks里事先算好的表，一次与运算就能判断能不能走
+* 9.generateSlides()按"一个棋子连续滑动任意几格（包括拐弯）算一步"的计法生成后继，slidePath()把这样的一步拆回一格一格的走法
+* 用法：先new SolverBoard(宽, 高)，再用addPiece()把Board上的棋子一个个放上去，再setGoal()设好曹操的目标位置
+ */
+public class SolverBoard {
+    public static final int MAX_PIECES = 16;
+    public static final int MOVE_BUFFER_SIZE = MAX_PIECES * 4;
+    //generateMoves()需要的数组长度
+    public static final int SLIDE_BUFFER_SIZE = MAX_PIECES * 64;
+    //generateSlides()需要的数组长度，每个棋子最多滑到棋盘上的每一个格子
+
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+    private static final int[] DX = {0, 0, -1, 1};
+    private static final int[] DY = {-1, 1, 0, 0};
+    //和Direction里面的顺序一样，方向d的反方向就是 d ^ 1
+
+    private final int width;
+    private final int height;
+    private final int[] cells;
+    //每个格子里放的是 棋子下标+1，0表示空格
+    private final MoveMasks masks;
+    private long occupancy;
+    //被占着的格子对应的bit是1，规则见MoveMasks
+    private long generatedMoves;
+    private final int[] slideMoves = new int[MOVE_BUFFER_SIZE];
+    private long slideVisited;
+    //generateSlides()和slidePath()里这个棋子已经滑到过的位置（左上角所在的格子）
+    //generateMoves()里用bit记下已经放进去的移动（棋子下标*4+方向正好不超过64个），同一个移动只放一次
+    private int pieceCount;
+    private final int[] pieceId = new int[MAX_PIECES];
+    private final int[] pieceShape = new int[MAX_PIECES];
+    private final int[] pieceWidth = new int[MAX_PIECES];
+    private final int[] pieceHeight = new int[MAX_PIECES];
+    private final int[] pieceX = new int[MAX_PIECES];
+    private final int[] pieceY = new int[MAX_PIECES];
+    private long key;
+    private long mirrorKey;
+    //左右翻转以后的棋盘的编码
+    private int goalX;
+    private int goalY;
+    private boolean foldMirror;
+    //胜利位置左右对称时为true，这时镜像的两个布局算同一个状态
+
+    public SolverBoard(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.cells = new int[width * height];
+        this.masks = MoveMasks.forSize(width, height);
+        this.occupancy = MoveMasks.WALL;
+    }
+
+    public boolean addPiece(int id, int blockWidth, int blockHeight, int x, int y) {
+        int shape = StateCodec.shapeCode(blockWidth, blockHeight);
+        if (shape < 0 || pieceCount >= MAX_PIECES || !StateCodec.supports(width, height)
+                || x < 0 || y < 0 || x + blockWidth > width || y + blockHeight > height) {
+            return false;
+        }
+        int piece = pieceCount++;
+        pieceId[piece] = id;
+        pieceShape[piece] = shape;
+        pieceWidth[piece] = blockWidth;
+        pieceHeight[piece] = blockHeight;
+        place(piece, x, y);
+        return true;
+    }
+    //放一个棋子到棋盘上，形状不认识、棋子太多或者位置越界时返回false
+
+    public void setGoal(int goalX, int goalY) {
+        this.goalX = goalX;
+        this.goalY = goalY;
+        this.foldMirror = StateCodec.isSymmetricGoal(width, goalX);
+    }
+
+    public SolverBoard copy() {
+        SolverBoard other = new SolverBoard(width, height);
+        other.setGoal(goalX, goalY);
+        for (int i = 0; i < pieceCount; i++) {
+            other.addPiece(pieceId[i], pieceWidth[i], pieceHeight[i], pieceX[i], pieceY[i]);
+        }
+        return other;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getGoalX() {
+        return goalX;
+    }
+
+    public int getGoalY() {
+        return goalY;
+    }
+
+    public long getKey() {
+        return key;
+    }
+
+    public long getCanonicalKey() {
+        if (foldMirror && mirrorKey < key) {
+            return mirrorKey;
+        }
+        return key;
+    }
+    //搜索判重时用这个：左右镜像的布局返回同一个编码
+
+    public boolean isWin() {
+        return StateCodec.isWin(key, width, goalX, goalY);
+    }
+
+    public int getPieceCount() {
+        return pieceCount;
+    }
+
+    public int getPieceId(int piece) {
+        return pieceId[piece];
+    }
+
+    public int getPieceX(int piece) {
+        return pieceX[piece];
+    }
+
+    public int getPieceY(int piece) {
+        return pieceY[piece];
+    }
+
+    public int getPieceWidth(int piece) {
+        return pieceWidth[piece];
+    }
+
+    public int getPieceHeight(int piece) {
+        return pieceHeight[piece];
+    }
+
+    public int getPieceShape(int piece) {
+        return pieceShape[piece];
+    }
+
+    public int estimateDistance() {
+        int distance = 0;
+        int square = -1;
+        for (int piece = 0; piece < pieceCount; piece++) {
+            if (pieceShape[piece] == StateCodec.SHAPE_SQUARE) {
+                square = piece;
+                distance += Math.abs(pieceX[piece] - goalX) + Math.abs(pieceY[piece] - goalY);
+                break;
+            }
+        }
+        int seen = 0;
+        //用bit记下已经数过的棋子，同一个棋子占了目标区域好几个格子也只算一次
+        for (int i = 0; i < StateCodec.shapeHeight(StateCodec.SHAPE_SQUARE); i++) {
+            for (int j = 0; j < StateCodec.shapeWidth(StateCodec.SHAPE_SQUARE); j++) {
+                int piece = cells[(goalY + i) * width + goalX + j] - 1;
+                if (piece >= 0 && piece != square && (seen & (1 << piece)) == 0) {
+                    seen |= 1 << piece;
+                    distance++;
+                }
+            }
+        }
+        return distance;
+    }
+    //估计离胜利至少还要几步，给A*和IDA*用：曹操到目标位置的曼哈顿距离，加上挡在目标区域里的其它棋子个数，
+    //曹操每一步只能走一格，挡路的棋子每个至少要被挪走一次，所以这个估计不会比真正的步数多；
+    //而且走一步最多让这个估计变化1，所以A*第一次展开一个状态时走的就是到它的最短路
+
+    public int[] getShapeCounts() {
+        int[] counts = new int[StateCodec.SHAPE_CODE_COUNT];
+        for (int piece = 0; piece < pieceCount; piece++) {
+            counts[pieceShape[piece]]++;
+        }
+        return counts;
+    }
+    //每种形状的棋子各有几个，下标就是形状编号
+
+    public int getPieceAt(int x, int y) {
+        return cells[y * width + x] - 1;
+    }
+    //返回这个格子上的棋子下标，空格返回-1
+
+    public void load(long stateKey) {
+        Arrays.fill(cells, 0);
+        pieceCount = 0;
+        key = 0;
+        mirrorKey = 0;
+        occupancy = MoveMasks.WALL;
+        int cellCount = width * height;
+        for (int cell = 0; cell < cellCount; cell++) {
+            int shape = (int) ((stateKey >>> (StateCodec.BITS_PER_CELL * cell)) & StateCodec.CELL_MASK);
+            if (shape != StateCodec.SHAPE_NONE) {
+                int piece = pieceCount++;
+                pieceId[piece] = 0;
+                pieceShape[piece] = shape;
+                pieceWidth[piece] = StateCodec.shapeWidth(shape);
+                pieceHeight[piece] = StateCodec.shapeHeight(shape);
+                place(piece, cell % width, cell / width);
+            }
+        }
+    }
+    //把一个状态编码还原到这块棋盘上，原来棋盘上的东西全部清掉
+
+    public boolean canMove(int piece, int direction) {
+        return (occupancy & masks.edgeMask(pieceWidth[piece], pieceHeight[piece], pieceX[piece], pieceY[piece], direction)) == 0;
+    }
+    //棋子往这个方向走一格时新占据的那一排格子都空着、也没有走出棋盘，才能走
+
+    public long getOccupancy() {
+        return occupancy;
+    }
+
+    public int generateMoves(int[] moves) {
+        int count = 0;
+        generatedMoves = 0;
+        long empty = ~occupancy & masks.allCells();
+        while (empty != 0) {
+            int cell = Long.numberOfTrailingZeros(empty);
+            empty &= empty - 1;
+            int x = cell % width;
+            int y = cell / width;
+            if (y > 0) count = probe(cells[cell - width] - 1, DOWN, moves, count);
+            if (y < height - 1) count = probe(cells[cell + width] - 1, UP, moves, count);
+            if (x > 0) count = probe(cells[cell - 1] - 1, RIGHT, moves, count);
+            if (x < width - 1) count = probe(cells[cell + 1] - 1, LEFT, moves, count);
+        }
+        return count;
+    }
+    //把所有合法移动写进moves数组，返回一共有几个，数组由调用者提供并反复使用，这样生成后继时不会产生新对象
+    //能走的棋子一定挨着某个空格，并且是朝着这个空格走，所以只要看每个空格上下左右的四个邻居：
+    //一般的布局只有两个空格，最多试8次，而不是把所有棋子的4个方向全试一遍；
+    //2格宽（或者2格高）的棋子要两个空格并排才能走，这由canMove()去查，两个空格各自会找到它一次，用generatedMoves去重
+
+    private int probe(int piece, int direction, int[] moves, int count) {
+        if (piece < 0) {
+            return count;
+        }
+        int move = piece * 4 + direction;
+        if ((generatedMoves & (1L << move)) != 0 || !canMove(piece, direction)) {
+            return count;
+        }
+        generatedMoves |= 1L << move;
+        moves[count] = move;
+        return count + 1;
+    }
+    //邻居格子上有棋子、这个移动还没放进去过、而且真的能走，就把它放进moves
+
+    public int generateSlides(long[] slideKeys) {
+        int moveCount = generateMoves(slideMoves);
+        int movable = 0;
+        for (int i = 0; i < moveCount; i++) {
+            movable |= 1 << movePiece(slideMoves[i]);
+        }
+        int count = 0;
+        while (movable != 0) {
+            int piece = Integer.numberOfTrailingZeros(movable);
+            movable &= movable - 1;
+            slideVisited = 1L << (pieceY[piece] * width + pieceX[piece]);
+            count = slide(piece, slideKeys, count);
+        }
+        return count;
+    }
+    //按"一个棋子连续滑动任意几格算一步"的计法，把走一步能到的所有状态的getCanonicalKey()写进slideKeys，返回一共有几个
+    //只有generateMoves()里能走的那几个棋子才会滑动，每个棋子在其它棋子不动的情况下深度优先地一格一格走，
+    //走到过的位置不再走，所以拐弯滑进两个空格、来回绕的走法都只算一次；返回时棋盘和调用前一样
+
+    private int slide(int piece, long[] slideKeys, int count) {
+        for (int direction = 0; direction < 4; direction++) {
+            if (!canMove(piece, direction)) {
+                continue;
+            }
+            int move = piece * 4 + direction;
+            applyMove(move);
+            long bit = 1L << (pieceY[piece] * width + pieceX[piece]);
+            if ((slideVisited & bit) == 0) {
+                slideVisited |= bit;
+                slideKeys[count++] = getCanonicalKey();
+                count = slide(piece, slideKeys, count);
+            }
+            undoMove(move);
+        }
+        return count;
+    }
+
+    public long[] slidePath(long targetKey) {
+        int moveCount = generateMoves(slideMoves);
+        int movable = 0;
+        for (int i = 0; i < moveCount; i++) {
+            movable |= 1 << movePiece(slideMoves[i]);
+        }
+        long[] path = new long[width * height];
+        while (movable != 0) {
+            int piece = Integer.numberOfTrailingZeros(movable);
+            movable &= movable - 1;
+            slideVisited = 1L << (pieceY[piece] * width + pieceX[piece]);
+            int length = findSlide(piece, targetKey, path, 0);
+            if (length > 0) {
+                return Arrays.copyOf(path, length);
+            }
+        }
+        return null;
+    }
+    //找出滑动一个棋子到达targetKey（getCanonicalKey()）的一格一格的走法，返回途中每一格的状态编码（不含当前状态，含targetKey），
+    //一步滑不到时返回null；返回时棋盘和调用前一样
+
+    private int findSlide(int piece, long targetKey, long[] path, int depth) {
+        for (int direction = 0; direction < 4; direction++) {
+            if (!canMove(piece, direction)) {
+                continue;
+            }
+            int move = piece * 4 + direction;
+            applyMove(move);
+            long bit = 1L << (pieceY[piece] * width + pieceX[piece]);
+            int length = 0;
+            if ((slideVisited & bit) == 0) {
+                slideVisited |= bit;
+                path[depth] = getCanonicalKey();
+                length = path[depth] == targetKey ? depth + 1 : findSlide(piece, targetKey, path, depth + 1);
+            }
+            undoMove(move);
+            if (length > 0) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    public static int movePiece(int move) {
+        return move >> 2;
+    }
+
+    public static int moveDirection(int move) {
+        return move & 3;
+    }
+
+    public void applyMove(int move) {
+        int piece = move >> 2;
+        int direction = move & 3;
+        shift(piece, pieceX[piece] + DX[direction], pieceY[piece] + DY[direction]);
+    }
+
+    public void undoMove(int move) {
+        applyMove(move ^ 1);
+    }
+    //退回一步就是把同一个棋子往反方向走一格
+
+    private void shift(int piece, int newX, int newY) {
+        int w = pieceWidth[piece];
+        int h = pieceHeight[piece];
+        int oldX = pieceX[piece];
+        int oldY = pieceY[piece];
+        for (int i = 0; i < h; i++) {
+            for (int j = 0; j < w; j++) {
+                cells[(oldY + i) * width + oldX + j] = 0;
+            }
+        }
+        occupancy &= ~masks.blockMask(w, h, oldX, oldY);
+        key &= ~StateCodec.pieceBits(width, (int) StateCodec.CELL_MASK, oldX, oldY);
+        mirrorKey &= ~StateCodec.pieceBits(width, (int) StateCodec.CELL_MASK, width - oldX - w, oldY);
+        place(piece, newX, newY);
+    }
+
+    private void place(int piece, int x, int y) {
+        pieceX[piece] = x;
+        pieceY[piece] = y;
+        for (int i = 0; i < pieceHeight[piece]; i++) {
+            for (int j = 0; j < pieceWidth[piece]; j++) {
+                cells[(y + i) * width + x + j] = piece + 1;
+            }
+        }
+        occupancy |= masks.blockMask(pieceWidth[piece], pieceHeight[piece], x, y);
+        key |= StateCodec.pieceBits(width, pieceShape[piece], x, y);
+        mirrorKey |= StateCodec.pieceBits(width, pieceShape[piece], width - x - pieceWidth[piece], y);
+    }
+    //把棋子写到(x,y)，同时把它那3个bit写进编码和镜像编码，把它占的格子写进occupancy
+
+    public List<int[]> translatePath(long[] keyPath) {
+        List<int[]> path = new ArrayList<>();
+        SolverBoard board = copy();
+        int[] moves = new int[MOVE_BUFFER_SIZE];
+        for (int step = 1; step < keyPath.length; step++) {
+            int count = board.generateMoves(moves);
+            boolean found = false;
+            for (int i = 0; i < count && !found; i++) {
+                int piece = movePiece(moves[i]);
+                int fromX = board.pieceX[piece];
+                int fromY = board.pieceY[piece];
+                board.applyMove(moves[i]);
+                if (board.getKey() == keyPath[step] || board.getCanonicalKey() == keyPath[step]) {
+                    path.add(new int[]{board.pieceId[piece], fromX, fromY, board.pieceX[piece], board.pieceY[piece]});
+                    found = true;
+                } else {
+                    board.undoMove(moves[i]);
+                }
+            }
+            if (!found) {
+                System.err.println("AI: 状态路径无法翻译成移动，第 " + step + " 步断开了。");
+                return null;
+            }
+        }
+        return path;
+    }
+    //从这块（带真实ID的）棋盘出发，依次找出能走到下一个状态编码的那一步，
+    //路径里的编码可以是普通编码，也可以是getCanonicalKey()给出的代表编码：搜索时如果走的是镜像那一边，
+    //真实棋盘上一定有一步对应的镜像移动能到达同一个代表编码，所以翻译出来的每一步都是真实棋盘上合法的移动
+    //返回的每个int[]是 {棋子ID, fromX, fromY, toX, toY}，这块棋盘本身不会被改动
+}
@@ -0,0 +1,160 @@
+package controller;
+
+import java.util.Arrays;
+
+/*
+* 这个类是"求解会话"：同一组棋子在一局游戏里反复求解（玩家照着AI的解法走了几步又走岔了，再点一次AI）时，
+* 不用每次都从头搜索，而是接着上一次的结果做
+* 1.和Tablebase.generate()一样，从所有胜利状态出发做反向BFS，得到 状态编码->离胜利的最少步数，
+*   但它不会一口气把所有布局都搜完，只搜到要问的那个布局有了步数就停下来，队列、已经算好的步数都留着
+* 2.再问一个布局时，如果它已经有步数（比如它就在上一次的解法上，或者离胜利比上一次问的更近），
+*   直接沿着"离胜利少一步"的布局一路查表走下去，只要 路径长度 次查表；
+*   如果还没有，就从上一次停下的地方接着往外搜，已经搜过的那些层不会再搜一遍
+* 3.BFS是一层一层往外搜的，所以一个布局一旦有了步数就一定是最少步数，给出的解法也一定是最短的
+* 4.被SearchMonitor叫停（超时、被取消）时已经搜过的部分也不会丢，下一次接着搜
+* 用法：SolverSession.forBoard(棋盘).solve(棋盘, monitor)，返回的和KlotskiSearch一样是一串状态编码；
+* 整个程序只留最近用到的那一组棋子的会话，换了一组棋子（比如换了模式、读了别的存档）就重新开始
+ */
+public class SolverSession {
+    private static SolverSession current;
+    //最近用到的会话，棋子组合变了就换掉，不会越攒越多
+
+    private final int width;
+    private final int height;
+    private final int goalX;
+    private final int goalY;
+    private final int[] shapeCounts;
+    private final SolverBoard workBoard;
+    private final LongIntHashMap distances = new LongIntHashMap();
+    //已经算出步数的布局，key是getCanonicalKey()
+    private final StateList queue = new StateList();
+    //反向BFS的队列，父状态下标的位置用来记它离胜利的步数（和Tablebase.generate()一样）
+    private final int[] moves = new int[SolverBoard.MOVE_BUFFER_SIZE];
+    private int head;
+    //下一个要展开的状态在queue里的下标，head之前的状态都已经展开过了
+    private long statesProcessed;
+    //整个会话一共展开过的状态数，只用来打日志；SearchMonitor的上限按每次调用单独计数
+
+    private SolverSession(SolverBoard board) {
+        this.width = board.getWidth();
+        this.height = board.getHeight();
+        this.goalX = board.getGoalX();
+        this.goalY = board.getGoalY();
+        this.shapeCounts = board.getShapeCounts();
+        this.workBoard = new SolverBoard(width, height);
+        workBoard.setGoal(goalX, goalY);
+        for (long winKey : KlotskiSearch.winningKeys(board)) {
+            if (distances.put(winKey, 0) == LongIntHashMap.NO_VALUE) {
+                queue.add(winKey, 0);
+            }
+        }
+    }
+
+    public static synchronized SolverSession forBoard(SolverBoard board) {
+        if (current == null || !current.matches(board)) {
+            current = new SolverSession(board);
+        }
+        return current;
+    }
+    //找到和这块棋盘的棋子组合对应的会话，没有就新开一个（这时还没有开始搜索）
+
+    public boolean matches(SolverBoard board) {
+        return board.getWidth() == width && board.getHeight() == height
+                && board.getGoalX() == goalX && board.getGoalY() == goalY
+                && Arrays.equals(board.getShapeCounts(), shapeCounts);
+    }
+    //棋盘大小、目标位置和每种形状的棋子个数都一样，才能共用一个会话
+
+    public synchronized int distance(long canonicalKey) {
+        return distances.get(canonicalKey);
+    }
+    //这个布局离胜利的最少步数，还没有搜到时返回LongIntHashMap.NO_VALUE（-1）
+
+    public synchronized int knownStates() {
+        return distances.size();
+    }
+
+    public synchronized boolean isExhausted() {
+        return head == queue.size();
+    }
+    //所有能走到胜利的布局都已经有步数了，这时还查不到的布局就是无解的
+
+    public synchronized long[] solve(SolverBoard start, SearchMonitor monitor) {
+        if (!matches(start)) {
+            System.err.println("AI: 这块棋盘的棋子组合和求解会话对不上。");
+            return null;
+        }
+        long startKey = start.getCanonicalKey();
+        int known = distances.get(startKey);
+        if (known == LongIntHashMap.NO_VALUE) {
+            int before = distances.size();
+            known = expandUntil(startKey, monitor);
+            if (known == LongIntHashMap.NO_VALUE) {
+                if (!monitor.isStopped()) {
+                    System.out.println("AI: 所有能赢的布局都搜完了，这个布局无解。");
+                }
+                return null;
+            }
+            System.out.println("AI: 求解会话接着上一次往外搜了 " + (distances.size() - before) + " 个状态，会话累计展开 " + statesProcessed + " 个状态。");
+        } else {
+            System.out.println("AI: 求解会话里已经有这个布局了，直接查表。");
+        }
+        return walk(start, known);
+    }
+    //返回从start走到胜利的最短的一串状态编码，start本身不会被改动；被monitor叫停或者无解时返回null
+
+    private int expandUntil(long targetKey, SearchMonitor monitor) {
+        long processedThisCall = 0;
+        while (head < queue.size()) {
+            int distance = queue.getParent(head);
+            if (monitor.tick(processedThisCall++, queue.size() - head, distance)) {
+                return LongIntHashMap.NO_VALUE;
+            }
+            workBoard.load(queue.getKey(head));
+            int moveCount = workBoard.generateMoves(moves);
+            for (int i = 0; i < moveCount; i++) {
+                workBoard.applyMove(moves[i]);
+                long key = workBoard.getCanonicalKey();
+                if (!distances.containsKey(key)) {
+                    distances.put(key, distance + 1);
+                    queue.add(key, distance + 1);
+                }
+                workBoard.undoMove(moves[i]);
+            }
+            head++;
+            statesProcessed++;
+            // 一个状态的所有走法都处理完才算展开过，所以不管在哪里停下来，下一次都能接着搜
+            int found = distances.get(targetKey);
+            if (found != LongIntHashMap.NO_VALUE) {
+                return found;
+            }
+        }
+        return LongIntHashMap.NO_VALUE;
+    }
+    //反向BFS一直搜到targetKey有了步数为止，monitor看到的状态数从0开始，只算这一次调用展开的
+
+    private long[] walk(SolverBoard start, int remaining) {
+        SolverBoard board = start.copy();
+        long[] keyPath = new long[remaining + 1];
+        keyPath[0] = board.getCanonicalKey();
+        for (int step = 1; step < keyPath.length; step++) {
+            int moveCount = board.generateMoves(moves);
+            boolean found = false;
+            for (int i = 0; i < moveCount && !found; i++) {
+                board.applyMove(moves[i]);
+                if (distances.get(board.getCanonicalKey()) == remaining - step) {
+                    keyPath[step] = board.getCanonicalKey();
+                    found = true;
+                } else {
+                    board.undoMove(moves[i]);
+                }
+            }
+            if (!found) {
+                System.err.println("AI: 求解会话的数据不一致，第 " + step + " 步找不到更近的布局。");
+                return null;
+            }
+        }
+        return keyPath;
+    }
+    //每一步都走到一个离胜利少一步的布局，比某个布局近的布局在BFS里都更早有了步数，所以一定查得到
+}
@@ -0,0 +1,106 @@
+package controller;
+
+/*
+* 这个类是一个工具类，用来把一个棋盘布局压缩成一个long，给AI搜索时当作状态的key来用：
+* 1.棋盘上的每一个格子用3个bit来表示，只在方块左上角的那个格子里写上这个方块的"形状编号"，其余格子都是0，
+*   4x5的棋盘一共20个格子，只需要60个bit，一个long就放得下
+* 2.形状编号只看方块的宽和高，不看方块的id，所以四个小兵（或者四个竖着的将军）互相交换位置得到的是同一个key，
+*   这对于搜索来说正好，因为这些布局本来就是等价的
+* 3.pieceBits()给出某一个方块在key里面的那一部分，把所有方块的结果或起来就是整个棋盘的key
+* 4.shapeCode()把方块的宽高转成形状编号，目前只支持1x1，1x2，2x1，2x2四种方块
+* 5.supports()用来判断这个宽高的棋盘能不能被压缩进一个long（最多21个格子）
+* 6.mirror()把棋盘左右翻转以后的key算出来，canonical()取一个布局和它的镜像中较小的那个key，
+*   只要胜利位置本身是左右对称的（曹操在正中间那两列），一个布局和它的镜像离胜利的步数就一样，搜索时可以当成同一个状态
+ */
+public class StateCodec {
+    public static final int BITS_PER_CELL = 3;
+    public static final long CELL_MASK = 7L;
+    public static final int MAX_CELLS = 63 / BITS_PER_CELL;
+    //一个long最多能放21个格子
+
+    public static final int SHAPE_NONE = 0;
+    public static final int SHAPE_SOLDIER = 1;   // 1x1 小兵
+    public static final int SHAPE_VERTICAL = 2;  // 1x2 竖着的将军
+    public static final int SHAPE_HORIZONTAL = 3;// 2x1 横着的关羽
+    public static final int SHAPE_SQUARE = 4;    // 2x2 曹操
+    public static final int SHAPE_CODE_COUNT = (int) CELL_MASK + 1;
+    //形状编号一共有几种可能，按形状统计方块个数的数组用这个长度
+
+    private static final int[] SHAPE_WIDTHS = {0, 1, 1, 2, 2, 0, 0, 0};
+    private static final int[] SHAPE_HEIGHTS = {0, 1, 2, 1, 2, 0, 0, 0};
+
+    private StateCodec() {
+    }
+
+    public static boolean supports(int width, int height) {
+        return width > 0 && height > 0 && width * height <= MAX_CELLS;
+    }
+
+    public static int shapeCode(int width, int height) {
+        if (width == 1 && height == 1) {
+            return SHAPE_SOLDIER;
+        }
+        if (width == 1 && height == 2) {
+            return SHAPE_VERTICAL;
+        }
+        if (width == 2 && height == 1) {
+            return SHAPE_HORIZONTAL;
+        }
+        if (width == 2 && height == 2) {
+            return SHAPE_SQUARE;
+        }
+        return -1;
+    }
+    //返回-1说明这个形状的方块没办法被压缩
+
+    public static int shapeWidth(int shapeCode) {
+        return SHAPE_WIDTHS[shapeCode];
+    }
+
+    public static int shapeHeight(int shapeCode) {
+        return SHAPE_HEIGHTS[shapeCode];
+    }
+
+    public static long pieceBits(int boardWidth, int shapeCode, int x, int y) {
+        return ((long) shapeCode) << (BITS_PER_CELL * (y * boardWidth + x));
+    }
+    //某个方块在key当中对应的那几个bit
+
+    public static int shapeAt(long key, int boardWidth, int x, int y) {
+        return (int) ((key >>> (BITS_PER_CELL * (y * boardWidth + x))) & CELL_MASK);
+    }
+    //查看key当中左上角在(x,y)的方块是什么形状，没有方块的左上角在这里就返回0
+
+    public static boolean isWin(long key, int boardWidth, int targetX, int targetY) {
+        return shapeAt(key, boardWidth, targetX, targetY) == SHAPE_SQUARE;
+    }
+    //曹操（唯一的2x2方块）的左上角到达目标位置就算胜利
+
+    public static long mirror(long key, int boardWidth, int boardHeight) {
+        long mirrored = 0;
+        int cellCount = boardWidth * boardHeight;
+        for (int cell = 0; cell < cellCount; cell++) {
+            int shape = (int) ((key >>> (BITS_PER_CELL * cell)) & CELL_MASK);
+            if (shape != SHAPE_NONE) {
+                int x = cell % boardWidth;
+                int y = cell / boardWidth;
+                mirrored |= pieceBits(boardWidth, shape, boardWidth - x - shapeWidth(shape), y);
+            }
+        }
+        return mirrored;
+    }
+    //左右翻转：左上角在x的方块，翻转以后左上角在 棋盘宽 - x - 方块宽
+
+    public static boolean isSymmetricGoal(int boardWidth, int targetX) {
+        return boardWidth - targetX - shapeWidth(SHAPE_SQUARE) == targetX;
+    }
+    //胜利位置翻转以后还是它自己，才能把镜像布局当成同一个状态
+
+    public static long canonical(long key, int boardWidth, int boardHeight, int targetX) {
+        if (!isSymmetricGoal(boardWidth, targetX)) {
+            return key;
+        }
+        return Math.min(key, mirror(key, boardWidth, boardHeight));
+    }
+    //一个布局和它的镜像里取较小的key作为代表，胜利位置不对称时就不做翻转
+}
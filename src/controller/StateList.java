@@ -0,0 +1,66 @@
+package controller;
+
+import java.util.Arrays;
+
+/*
+* 这个类给BFS搜索用，它按加入的顺序存下每一个走到过的状态编码，以及它是从第几个状态走过来的（父状态的下标）
+* 1.BFS的队列就是这个列表本身：从下标0开始依次往后处理，新状态直接加在末尾，不需要另外的Queue
+* 2.每个状态只占一个long和一个int，不再需要SearchNode对象
+* 3.pathTo()沿着父状态的下标往回走，得到从起点到这个状态的一串状态编码
+ */
+public class StateList {
+    private long[] keys;
+    private int[] parents;
+    private int size;
+
+    public StateList() {
+        this(1024);
+    }
+
+    public StateList(int initialCapacity) {
+        this.keys = new long[Math.max(16, initialCapacity)];
+        this.parents = new int[keys.length];
+    }
+
+    public int add(long key, int parentIndex) {
+        if (size == keys.length) {
+            int newCapacity = keys.length + (keys.length >> 1);
+            keys = Arrays.copyOf(keys, newCapacity);
+            parents = Arrays.copyOf(parents, newCapacity);
+        }
+        keys[size] = key;
+        parents[size] = parentIndex;
+        return size++;
+    }
+    //加入一个状态，返回它的下标，起点的父状态下标记为-1
+
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    public int getParent(int index) {
+        return parents[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long[] toKeyArray() {
+        return Arrays.copyOf(keys, size);
+    }
+    //按加入的顺序返回所有状态编码
+
+    public long[] pathTo(int index) {
+        int length = 0;
+        for (int i = index; i >= 0; i = parents[i]) {
+            length++;
+        }
+        long[] path = new long[length];
+        for (int i = index; i >= 0; i = parents[i]) {
+            path[--length] = keys[i];
+        }
+        return path;
+    }
+    //返回从起点到index这个状态的所有状态编码，第一个是起点，最后一个是这个状态本身
+}
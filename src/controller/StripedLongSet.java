@@ -0,0 +1,43 @@
+package controller;
+
+/*
+* 这个类是可以被多个线程同时使用的LongHashSet，给并行BFS判重用
+* 做法是"分段加锁"：把状态编码按哈希值分到STRIPES个小的LongHashSet里，每个小表各自加锁，
+* 不同线程加入的状态大多落在不同的小表里，互相之间基本不用等待
+ */
+public class StripedLongSet {
+    private static final int STRIPES = 64;
+
+    private final LongHashSet[] stripes = new LongHashSet[STRIPES];
+
+    public StripedLongSet() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new LongHashSet();
+        }
+    }
+
+    public boolean add(long key) {
+        LongHashSet stripe = stripes[(LongHashSet.mix(key) >>> 16) & (STRIPES - 1)];
+        synchronized (stripe) {
+            return stripe.add(key);
+        }
+    }
+    //第一次加入时返回true，和LongHashSet.add()一样
+
+    public boolean contains(long key) {
+        LongHashSet stripe = stripes[(LongHashSet.mix(key) >>> 16) & (STRIPES - 1)];
+        synchronized (stripe) {
+            return stripe.contains(key);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (LongHashSet stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,306 @@
+package controller;
+
+import java.io.*;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/*
+* 这个类是"残局库"：对一组固定的棋子（比如横刀立马的10个棋子），提前算好每一个能赢的布局离胜利还差几步
+* 1.generate()从所有胜利状态出发做一次反向的BFS（滑块的每一步都可以原路退回，所以反向走和正向走是一样的），
+*   得到每个状态到胜利的最少步数，状态编码用的是SolverBoard.getCanonicalKey()
+* 2.结果按状态编码排好序写进一个文件，文件头记录了棋盘大小、目标位置和每种形状的棋子个数，
+*   之后用FileChannel.map()把文件映射进内存，查询时直接在映射的内存上二分查找，不需要把整个文件读进来
+* 3.path()从当前布局出发，每一步都走到一个"离胜利少一步"的布局，所以求解只需要 路径长度 次查表
+* 4.forBoard()按棋子的组合找到对应的残局库，第一次用到时如果文件不存在就现场生成一份，之后都直接映射；
+*   它只在后台的preloadDefault()和离线工具里调用，求解时用loadedFor()，残局库还没准备好就退回SolverSession，不会卡住
+* 文件名类似 klotski_4x5_1-3_0-4-4-1-1-0-0-0.tb，和users.dat、存档文件一样放在程序运行的目录下，
+* 也可以直接运行这个类的main()提前生成横刀立马的残局库
+ */
+public class Tablebase {
+    private static final int MAGIC = 0x4B4C5442;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    //文件头：MAGIC，VERSION，宽，高，目标x，目标y，8种形状的个数，状态个数，一共15个int，补齐到64字节
+    public static final String FILE_PREFIX = "klotski_";
+    public static final String FILE_SUFFIX = ".tb";
+
+    private static final Map<String, Tablebase> LOADED = new HashMap<>();
+    //已经映射过的残局库，按棋子组合的名字记录，整个程序里每种组合只映射一次
+    private static final Object GENERATE_LOCK = new Object();
+    //读文件、生成只在这把锁里做，一次只生成一份；查LOADED用的是另一把锁，所以生成的时候loadedFor()不用等
+
+    private final int count;
+    private final LongBuffer keys;
+    private final ShortBuffer distances;
+
+    private Tablebase(int count, LongBuffer keys, ShortBuffer distances) {
+        this.count = count;
+        this.keys = keys;
+        this.distances = distances;
+    }
+
+    public static Tablebase forBoard(SolverBoard board) {
+        String name = fileName(board.getWidth(), board.getHeight(), board.getGoalX(), board.getGoalY(), board.getShapeCounts());
+        synchronized (LOADED) {
+            Tablebase tablebase = LOADED.get(name);
+            if (tablebase != null) {
+                return tablebase;
+            }
+        }
+        synchronized (GENERATE_LOCK) {
+            synchronized (LOADED) {
+                Tablebase tablebase = LOADED.get(name);
+                if (tablebase != null) {
+                    return tablebase;
+                }
+            }
+            // 等锁的时候别的线程可能已经准备好了
+            File file = new File(name);
+            Tablebase tablebase = file.isFile() ? load(file, board) : null;
+            if (tablebase == null) {
+                System.out.println("AI: 没有找到可用的残局库 " + name + "，开始生成...");
+                if (!generate(board.getWidth(), board.getHeight(), board.getGoalX(), board.getGoalY(), board.getShapeCounts(), file)) {
+                    return null;
+                }
+                tablebase = load(file, board);
+            }
+            // 文件坏了、或者是别的棋子组合的文件（比如被改过名字）时重新生成一份盖掉它
+            if (tablebase != null) {
+                synchronized (LOADED) {
+                    LOADED.put(name, tablebase);
+                }
+            }
+            return tablebase;
+        }
+    }
+    //找到和这块棋盘的棋子组合对应的残局库，没有就生成，生成或者读取失败时返回null
+    //生成可能要很久，而且不受SearchMonitor控制，所以只给preloadDefault()这样的后台线程和离线工具用，求解和界面上的代码用loadedFor()
+
+    public static Tablebase loadedFor(SolverBoard board) {
+        String name = fileName(board.getWidth(), board.getHeight(), board.getGoalX(), board.getGoalY(), board.getShapeCounts());
+        synchronized (LOADED) {
+            return LOADED.get(name);
+        }
+    }
+    //只找已经映射好的残局库，没有时直接返回null，不会去读文件或者生成，也不会等正在生成的forBoard()
+
+    public static String fileName(int width, int height, int goalX, int goalY, int[] shapeCounts) {
+        return fileName(width, height, goalX, goalY, shapeCounts, FILE_SUFFIX);
+    }
+
+    public static String fileName(int width, int height, int goalX, int goalY, int[] shapeCounts, String suffix) {
+        StringBuilder name = new StringBuilder(FILE_PREFIX);
+        name.append(width).append('x').append(height).append('_').append(goalX).append('-').append(goalY).append('_');
+        for (int shape = 0; shape < StateCodec.SHAPE_CODE_COUNT; shape++) {
+            if (shape > 0) {
+                name.append('-');
+            }
+            name.append(shape < shapeCounts.length ? shapeCounts[shape] : 0);
+        }
+        return name.append(suffix).toString();
+    }
+    //按棋子组合起的文件名，PuzzleExplorer的布局索引文件也用它，只是后缀不一样
+
+    public int size() {
+        return count;
+    }
+
+    public long keyAt(int index) {
+        return keys.get(index);
+    }
+
+    public int distanceAt(int index) {
+        return distances.get(index);
+    }
+    //按编码排好序以后第index个状态的编码和步数（0 <= index < size()），LayoutGenerator随机挑布局时用
+
+    public int distance(long canonicalKey) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = keys.get(mid);
+            if (midKey < canonicalKey) {
+                low = mid + 1;
+            } else if (midKey > canonicalKey) {
+                high = mid - 1;
+            } else {
+                return distances.get(mid);
+            }
+        }
+        return -1;
+    }
+    //在映射的文件上二分查找，返回这个状态离胜利的最少步数，查不到说明这个布局根本赢不了，返回-1
+
+    public long[] path(SolverBoard start) {
+        SolverBoard board = start.copy();
+        int remaining = distance(board.getCanonicalKey());
+        if (remaining < 0) {
+            System.out.println("AI: 残局库中没有这个布局，说明它无解。");
+            return null;
+        }
+        long[] keyPath = new long[remaining + 1];
+        keyPath[0] = board.getCanonicalKey();
+        int[] moves = new int[SolverBoard.MOVE_BUFFER_SIZE];
+        for (int step = 1; step < keyPath.length; step++) {
+            int moveCount = board.generateMoves(moves);
+            boolean found = false;
+            for (int i = 0; i < moveCount && !found; i++) {
+                board.applyMove(moves[i]);
+                if (distance(board.getCanonicalKey()) == remaining - step) {
+                    keyPath[step] = board.getCanonicalKey();
+                    found = true;
+                } else {
+                    board.undoMove(moves[i]);
+                }
+            }
+            if (!found) {
+                System.err.println("AI: 残局库数据不一致，第 " + step + " 步找不到更近的布局。");
+                return null;
+            }
+        }
+        System.out.println("AI: 从残局库中直接得到了 " + remaining + " 步的解法。");
+        return keyPath;
+    }
+    //返回的和KlotskiSearch一样是一串状态编码，再用start.translatePath()翻译成移动，start本身不会被改动
+
+    public static boolean generate(int width, int height, int goalX, int goalY, int[] shapeCounts, File file) {
+        long startTime = System.currentTimeMillis();
+        SolverBoard board = new SolverBoard(width, height);
+        board.setGoal(goalX, goalY);
+
+        StateList layers = new StateList();
+        // BFS的队列，同时按层记录每个状态，父状态下标的位置用来记它离胜利的步数
+        LongHashSet visited = new LongHashSet();
+        for (long winKey : LayoutEnumerator.winningLayouts(width, height, shapeCounts, goalX, goalY)) {
+            long key = StateCodec.canonical(winKey, width, height, goalX);
+            if (visited.add(key)) {
+                layers.add(key, 0);
+            }
+        }
+        if (layers.size() == 0) {
+            System.out.println("AI: 这组棋子没有任何胜利状态，无法生成残局库。");
+            return false;
+        }
+
+        int[] moves = new int[SolverBoard.MOVE_BUFFER_SIZE];
+        int maxDistance = 0;
+        for (int head = 0; head < layers.size(); head++) {
+            int distance = layers.getParent(head);
+            board.load(layers.getKey(head));
+            int moveCount = board.generateMoves(moves);
+            for (int i = 0; i < moveCount; i++) {
+                board.applyMove(moves[i]);
+                long key = board.getCanonicalKey();
+                if (visited.add(key)) {
+                    layers.add(key, distance + 1);
+                    maxDistance = distance + 1;
+                }
+                board.undoMove(moves[i]);
+            }
+        }
+        if (maxDistance > Short.MAX_VALUE) {
+            System.out.println("AI: 最远的布局超过了 " + Short.MAX_VALUE + " 步，无法写进残局库。");
+            return false;
+        }
+
+        int count = layers.size();
+        long[] sortedKeys = layers.toKeyArray();
+        Arrays.sort(sortedKeys);
+        short[] sortedDistances = new short[count];
+        for (int i = 0; i < count; i++) {
+            sortedDistances[Arrays.binarySearch(sortedKeys, layers.getKey(i))] = (short) layers.getParent(i);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(goalX);
+            out.writeInt(goalY);
+            for (int shape = 0; shape < StateCodec.SHAPE_CODE_COUNT; shape++) {
+                out.writeInt(shape < shapeCounts.length ? shapeCounts[shape] : 0);
+            }
+            out.writeInt(count);
+            out.writeInt(0);
+            for (long key : sortedKeys) {
+                out.writeLong(key);
+            }
+            for (short distance : sortedDistances) {
+                out.writeShort(distance);
+            }
+        } catch (IOException e) {
+            System.out.println("When the tablebase is saving to " + file.getAbsolutePath() + ", something goes wrong: " + e.getMessage());
+            return false;
+        }
+        System.out.println("AI: 残局库生成完毕，" + count + " 个状态，最远 " + maxDistance + " 步，耗时 "
+                + (System.currentTimeMillis() - startTime) + " ms，保存到 " + file.getAbsolutePath());
+        return true;
+    }
+    //从所有胜利状态出发做反向BFS，把 状态编码->步数 按编码排好序写进文件
+
+    public static Tablebase load(File file, SolverBoard board) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // 映射以后即使关掉channel，这块内存也一直有效
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                System.out.println("The tablebase file " + file.getAbsolutePath() + " is not valid.");
+                return null;
+            }
+            int[] shapeCounts = board.getShapeCounts();
+            boolean matches = buffer.getInt(8) == board.getWidth() && buffer.getInt(12) == board.getHeight()
+                    && buffer.getInt(16) == board.getGoalX() && buffer.getInt(20) == board.getGoalY();
+            for (int shape = 0; shape < StateCodec.SHAPE_CODE_COUNT && matches; shape++) {
+                matches = buffer.getInt(24 + 4 * shape) == (shape < shapeCounts.length ? shapeCounts[shape] : 0);
+            }
+            if (!matches) {
+                System.out.println("The tablebase file " + file.getAbsolutePath() + " is for a different board or set of pieces.");
+                return null;
+            }
+            // 文件头里的棋盘大小、目标位置和每种形状的棋子个数都要和board一样，不然查出来的步数是错的
+            int count = buffer.getInt(24 + 4 * StateCodec.SHAPE_CODE_COUNT);
+            if (buffer.capacity() < HEADER_BYTES + (long) count * (Long.BYTES + Short.BYTES)) {
+                System.out.println("The tablebase file " + file.getAbsolutePath() + " is truncated.");
+                return null;
+            }
+            LongBuffer keys = buffer.position(HEADER_BYTES).slice().asLongBuffer();
+            ShortBuffer distances = buffer.position(HEADER_BYTES + count * Long.BYTES).slice().asShortBuffer();
+            return new Tablebase(count, keys, distances);
+        } catch (IOException e) {
+            System.out.println("When we get the tablebase from " + file.getAbsolutePath() + " something goes wrong: " + e.getMessage());
+            return null;
+        }
+    }
+    //把残局库文件映射进内存，文件不对、或者不是board这组棋子的残局库时返回null
+
+    public static void preloadDefault() {
+        Thread loader = new Thread(() -> {
+            SolverBoard board = AISolver.toSolverBoard(new Board());
+            if (board != null) {
+                forBoard(board);
+            }
+        }, "tablebase-loader");
+        loader.setDaemon(true);
+        loader.setPriority(Thread.MIN_PRIORITY);
+        loader.start();
+    }
+    //在后台提前映射（或者生成）横刀立马这组棋子的残局库，这样第一次点AI的时候就不用等了
+
+    public static void main(String[] args) {
+        SolverBoard board = AISolver.toSolverBoard(new Board());
+        String name = fileName(board.getWidth(), board.getHeight(), board.getGoalX(), board.getGoalY(), board.getShapeCounts());
+        File file = new File(args.length > 0 ? args[0] : name);
+        if (generate(board.getWidth(), board.getHeight(), board.getGoalX(), board.getGoalY(), board.getShapeCounts(), file)) {
+            Tablebase tablebase = load(file, board);
+            if (tablebase != null) {
+                System.out.println("横刀立马的开局离胜利 " + tablebase.distance(board.getCanonicalKey()) + " 步。");
+            }
+        }
+    }
+    //离线生成横刀立马的残局库，可以传一个参数指定文件名
+}
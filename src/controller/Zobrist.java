@@ -0,0 +1,55 @@
+package controller;
+
+/*
+* 这个类给棋盘算Zobrist哈希：给每一个 (方块ID, 格子) 配一个固定的随机long，
+* 整个棋盘的哈希就是所有被占着的格子上 (占着它的方块ID, 这个格子) 对应的随机数异或在一起
+* 1.异或两次等于没有异或，所以一个方块离开某些格子、进入另一些格子时，只要把这些格子的随机数再异或一遍，
+*   不用重新扫描整个棋盘，Board系列的moveBlockOnBoard()、removeBlockById()就是这样增量更新的
+* 2.随机数是由固定的种子算出来的，每次启动程序都一样，所以这个哈希可以存到文件里以后再用
+* 3.ID小于TABLE_IDS、格子下标小于TABLE_CELLS的随机数事先算好放在表里，超出的部分现算（结果一样）
+* 用法：Zobrist.blockHash(方块ID, 棋盘宽, 棋盘高, 方块宽, 方块高, x, y) 得到一个方块在(x,y)时的那部分哈希
+ */
+public class Zobrist {
+    private static final int TABLE_IDS = 64;
+    private static final int TABLE_CELLS = 64;
+    private static final long SEED = 0x6B6C6F74736B69L;
+    private static final long[] TABLE = new long[TABLE_IDS * TABLE_CELLS];
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            TABLE[i] = splitMix(SEED + i);
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    public static long cellHash(int blockId, int cell) {
+        if (blockId >= 0 && blockId < TABLE_IDS && cell >= 0 && cell < TABLE_CELLS) {
+            return TABLE[blockId * TABLE_CELLS + cell];
+        }
+        return splitMix(SEED + (long) blockId * TABLE_CELLS + cell);
+    }
+    //ID为blockId的方块占着第cell个格子（cell = y*宽+x）时对应的随机数
+
+    public static long blockHash(int blockId, int boardWidth, int boardHeight, int blockWidth, int blockHeight, int x, int y) {
+        long hash = 0;
+        for (int i = 0; i < blockHeight; i++) {
+            for (int j = 0; j < blockWidth; j++) {
+                if (x + j >= 0 && x + j < boardWidth && y + i >= 0 && y + i < boardHeight) {
+                    hash ^= cellHash(blockId, (y + i) * boardWidth + x + j);
+                }
+            }
+        }
+        return hash;
+    }
+    //一个方块放在(x,y)时它占的所有格子的随机数异或在一起，伸出棋盘的部分不算（和grid里记的一样）
+
+    private static long splitMix(long value) {
+        long z = value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    //SplitMix64的打散函数，输入差一点输出就差很多
+}
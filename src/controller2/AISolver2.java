@@ -1,293 +1,255 @@
 package controller2;
 
+import controller.BoardSnapshot;
+import controller.KlotskiSearch;
+import controller.SolverBoard;
+import controller.SearchMode;
+import controller.SearchMonitor;
+import controller.Zobrist;
+
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+/*
+* 双向的BFS相比较于单向的有以下三个变化：
+* 1.反向的搜索从这组棋子所有的胜利布局同时开始（由LayoutEnumerator列举出来），而不是某一个固定的胜利布局，
+*   所以不管开局是什么样子（包括大挪移和用过炸弹以后的棋盘），两边最终都能相遇
+* 2.正向和反向推得的两串状态编码在KlotskiSearch.bidirectional()里面接成一条完整的路径
+* 3.写solve时用到两个队列，且找到的最终目标从找到胜利状态变为了找到两个队列推出来重合的节点
+* 搜索本身和AISolver一样在一块SolverBoard上原地进行，只有最终答案的那几步才会翻译成MoveRecord
+* 这组棋子如果有残局库（见Tablebase），就先直接查表，没有残局库再用SolverSession（同一局里反复求解时接着上一次的结果做），也可以用构造函数指定别的求解方式（见SearchMode）
+* solveWithSkills()还会把"炸弹"和"大挪移"当成两种有次数限制、有代价的动作一起考虑，告诉玩家放不放技能、先放哪个最省步数（见SkillPlan2）
+ */
 
 public class AISolver2 {
-    private static class SearchNode {
-        GameState2 gameState;
-        List<MoveRecord2> path; // 从其各自的搜索起点（真实起点或目标点）到此节点的路径
 
-        public SearchNode(GameState2 gameState, List<MoveRecord2> path) {
-            this.gameState = gameState;
-            this.path = path; // 这个路径已经是完整的，从其搜索源头开始
-        }
+    private final SearchMode mode;
+    public static final int DEFAULT_SKILL_COST = 1;
+    //放一次技能默认算一步，这样AI只有在技能真的能省下步数时才会建议放
 
-        public GameState2 getGameState() {
-            return gameState;
-        }
+    // 构造函数
+    public AISolver2() {
+        this(SearchMode.TABLEBASE);
+    }
 
-        public List<MoveRecord2> getPath() {
-            return path;
-        }
+    public AISolver2(SearchMode mode) {
+        this.mode = mode;
     }
+    // 可以选择求解的方式，见SearchMode，默认先查残局库，没有残局库再用SolverSession
 
-    // 构造函数
-    public AISolver2() {
+    private boolean isWinState(BoardSnapshot snapshot) {
+        return snapshot.contains(GameLogic2.CAO_CAO_ID)
+                && snapshot.getX(GameLogic2.CAO_CAO_ID) == GameLogic2.WIN_TARGET_X && snapshot.getY(GameLogic2.CAO_CAO_ID) == GameLogic2.WIN_TARGET_Y;
     }
 
-    private String boardToString(Board2 board) {
-        StringBuilder sb = new StringBuilder();
-        int[][] grid = board.getGridCopy();
-        for (int i = 0; i < board.getHeight(); i++) {
-            for (int j = 0; j < board.getWidth(); j++) {
-                sb.append(grid[i][j]);
-                sb.append(',');
+    public static SolverBoard toSolverBoard(Board2 board) {
+        SolverBoard solverBoard = new SolverBoard(board.getWidth(), board.getHeight());
+        solverBoard.setGoal(GameLogic2.WIN_TARGET_X, GameLogic2.WIN_TARGET_Y);
+        for (Block2 block : board.getBlocksCopy().values()) {
+            if (!solverBoard.addPiece(block.getId(), block.getWidth(), block.getHeight(), block.getX(), block.getY())) {
+                return null;
             }
         }
-        return sb.toString();
+        return solverBoard;
     }
+    // 把Board2上的每个棋子放到一块新的SolverBoard上，棋盘太大或者有不认识的棋子形状时返回null
 
-    private boolean isWinState(Board2 board) {
-        Block2 caoCao = board.getBlockById(GameLogic2.CAO_CAO_ID);
-        if (caoCao != null) {
-            return caoCao.getX() == GameLogic2.WIN_TARGET_X && caoCao.getY() == GameLogic2.WIN_TARGET_Y;
+    public static List<MoveRecord2> toMoveRecords(List<int[]> moves) {
+        if (moves == null) {
+            return Collections.emptyList();
         }
-        return false;
-    }
-
-    private boolean canMoveOnBoard(Board2 board, Block2 block, int dx, int dy) {
-        if (block == null || (dx == 0 && dy == 0)) {
-            return false;
+        List<MoveRecord2> records = new ArrayList<>(moves.size());
+        for (int[] move : moves) {
+            records.add(new MoveRecord2(move[0], move[1], move[2], move[3], move[4]));
         }
+        return records;
+    }
+    // 把translatePath()得到的 {棋子ID, fromX, fromY, toX, toY} 转成MoveRecord2
 
-        int currentBlockX = block.getX();
-        int currentBlockY = block.getY();
-        int blockWidth = block.getWidth();
-        int blockHeight = block.getHeight();
-        int boardWidth = board.getWidth();
-        int boardHeight = board.getHeight();
+    public List<MoveRecord2> solve(GameState2 initialGameState) {
+        return solve(initialGameState, new SearchMonitor());
+    }
+    // 不限时间、不能取消的求解，内存用到上限时仍然会停下来
 
-        // 1. 检查移动方向：一次只能移动一格
-        if (Math.abs(dx) > 1 || Math.abs(dy) > 1 || (Math.abs(dx) + Math.abs(dy) != 1)) {
-            if (Math.abs(dx) + Math.abs(dy) == 0) return false; // No move
-        }
+    public CompletableFuture<List<MoveRecord2>> solveAsync(GameState2 initialGameState, SearchMonitor monitor) {
+        return solveAsync(initialGameState.getBoard().snapshot(), monitor);
+    }
+    // 在调用的线程里先给棋盘拍一张快照，后台线程只读这张快照，所以传进来的GameState之后随便改都没关系
+
+    public CompletableFuture<List<MoveRecord2>> solveAsync(BoardSnapshot snapshot, SearchMonitor monitor) {
+        CompletableFuture<List<MoveRecord2>> future = CompletableFuture.supplyAsync(
+                () -> solve(snapshot, monitor), KlotskiSearch.solverExecutor());
+        future.whenComplete((solution, error) -> {
+            if (future.isCancelled()) {
+                monitor.cancel();
+            }
+        });
+        return future;
+    }
+    // 在后台线程里求解，立刻返回一个CompletableFuture，
+    // 调用future.cancel()或者monitor.cancel()都能让搜索停下来，快照是不可变的，可以直接传GameLogic.getSnapshot()进来
 
-        int newX = currentBlockX + dx;
-        int newY = currentBlockY + dy;
+    public List<MoveRecord2> solve(GameState2 initialGameState, SearchMonitor monitor) {
+        return solve(initialGameState.getBoard().snapshot(), monitor);
+    }
+    // 直接在当前线程里求解，GameState先换成快照
 
-        // 2. 检查边界
-        if (newX < 0 || (newX + blockWidth) > boardWidth ||
-                newY < 0 || (newY + blockHeight) > boardHeight) {
-            return false;
+    public List<MoveRecord2> solve(BoardSnapshot snapshot, SearchMonitor monitor) {
+        if (snapshot == null) {
+            System.err.println("AI: 这个棋盘无法生成快照，无法求解。");
+            return Collections.emptyList();
+        }
+        if (isWinState(snapshot)) {
+            return Collections.emptyList();
         }
 
-        // 3. 检查目标位置是否为空
-        // 遍历将要移动到的区域，但只检查 *新* 占据的格子
-        Board2 tempBoard = board; // Use the provided board
-
-        if (dx > 0) { // 向右移动
-            for (int y = 0; y < blockHeight; y++) {
-                if (tempBoard.getBlockIdAt(newX + blockWidth - 1, currentBlockY + y) != Board2.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dx < 0) { // 向左移动
-            for (int y = 0; y < blockHeight; y++) {
-                if (tempBoard.getBlockIdAt(newX, currentBlockY + y) != Board2.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dy > 0) { // 向下移动
-            for (int x = 0; x < blockWidth; x++) {
-                if (tempBoard.getBlockIdAt(currentBlockX + x, newY + blockHeight - 1) != Board2.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dy < 0) { // 向上移动
-            for (int x = 0; x < blockWidth; x++) {
-                if (tempBoard.getBlockIdAt(currentBlockX + x, newY) != Board2.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
+        SolverBoard startBoard = snapshot.toSolverBoard(GameLogic2.WIN_TARGET_X, GameLogic2.WIN_TARGET_Y);
+        if (startBoard == null) {
+            System.err.println("AI: 这个棋盘无法压缩成状态编码，无法求解。");
+            return Collections.emptyList();
         }
 
-        return true;
+        long[] keyPath = KlotskiSearch.search(mode, startBoard, monitor);
+        // 双向搜索时正向从起点、反向从所有的胜利状态同时搜索，两边相遇以后返回从起点到胜利状态的一串状态编码
+        if (keyPath == null) {
+            return Collections.emptyList();
+        }
+        return toMoveRecords(startBoard.translatePath(keyPath));
+        // 状态编码不区分同形状的棋子，翻译时在真实棋盘上按编码一步步找出对应的移动，所以棋子ID一定是对的
     }
 
+    public SkillPlan2 solveWithSkills(BoardSnapshot snapshot, BoardSnapshot teleportTarget, int bombUses, int teleportUses, SearchMonitor monitor) {
+        return solveWithSkills(snapshot, teleportTarget, bombUses, teleportUses, DEFAULT_SKILL_COST, DEFAULT_SKILL_COST, monitor);
+    }
+    // 每个技能都按DEFAULT_SKILL_COST算代价
 
-    private List<SearchNode> generateSuccessorStates(SearchNode parentNode) {
-        List<SearchNode> successors = new ArrayList<>();
-        GameState2 currentParentState = parentNode.getGameState();
-        Board2 currentBoard = currentParentState.getBoard();
+    public SkillPlan2 solveWithSkills(BoardSnapshot snapshot, BoardSnapshot teleportTarget, int bombUses, int teleportUses,
+                                      int bombCost, int teleportCost, SearchMonitor monitor) {
+        if (snapshot == null) {
+            System.err.println("AI: 这个棋盘无法生成快照，无法求解。");
+            return null;
+        }
+        SkillSearch search = new SkillSearch(teleportTarget, bombCost, teleportCost, monitor);
+        List<MoveRecord2> plainMoves = search.subSolve(snapshot);
+        if (plainMoves != null) {
+            search.offer(new ArrayList<>(), plainMoves, plainMoves.size());
+        }
+        List<SkillPlan2.Skill> fired = new ArrayList<>();
+        search.tryBomb(snapshot, bombUses, teleportUses, fired, 0);
+        search.tryTeleport(snapshot, bombUses, teleportUses, fired, 0);
+        if (monitor.isStopped()) {
+            return null;
+        }
+        if (search.bestMoves == null) {
+            System.out.println("AI: 放不放技能都找不到解法。");
+            return null;
+        }
+        return new SkillPlan2(search.bestSkills, search.bestMoves, search.bestCost, plainMoves, teleportTarget);
+    }
+    // 返回代价（走的步数加上技能的代价）最小的方案，代价一样时选放技能少的；被monitor叫停或者无解时返回null
+    // teleportTarget是大挪移以后的布局（GameLogic2.getTeleportPreview()），传null时不考虑大挪移
+    // 技能只会在一开始放：炸弹只是去掉一个棋子，原来能走的每一步去掉兵1以后还能走，所以早放不会比晚放差；
+    // 大挪移不管什么时候放，棋盘都变成同一个布局（teleportTarget，见GameLogic2.getTeleportPreview()），之前走的步都白走了，所以也是一开始就放最好。
+    // 这样整个问题就变成"先放哪几个技能"，只有寥寥几种组合，每种组合剩下的就是一次普通的求解
+
+    private class SkillSearch {
+        private final BoardSnapshot teleportTarget;
+        private final int bombCost;
+        private final int teleportCost;
+        private final SearchMonitor monitor;
+        private final Map<BoardSnapshot, List<MoveRecord2>> memo = new HashMap<>();
+        //同一个布局只求解一次，求不出解的布局记null；KlotskiSearch.search()还会把解存进SolutionCache，下次启动也不用再搜
+        private List<SkillPlan2.Skill> bestSkills;
+        private List<MoveRecord2> bestMoves;
+        private int bestCost = Integer.MAX_VALUE;
+
+        private SkillSearch(BoardSnapshot teleportTarget, int bombCost, int teleportCost, SearchMonitor monitor) {
+            this.teleportTarget = teleportTarget;
+            this.bombCost = Math.max(0, bombCost);
+            this.teleportCost = Math.max(0, teleportCost);
+            this.monitor = monitor;
+        }
 
-        for (Block2 originalBlock : currentBoard.getBlocksCopy().values()) {
-            if (originalBlock.getId() == Board2.EMPTY_CELL_ID) {
-                continue;
+        private List<MoveRecord2> subSolve(BoardSnapshot snapshot) {
+            if (memo.containsKey(snapshot)) {
+                return memo.get(snapshot);
             }
-
-            for (Direction2 direction : Direction2.values()) {
-                // Try moving 1 step
-                int dx = direction.getDx();
-                int dy = direction.getDy();
-
-                if (canMoveOnBoard(currentBoard, originalBlock, dx, dy)) {
-                    Board2 nextBoard = new Board2(currentBoard);
-                    Block2 blockToMoveOnNextBoard = nextBoard.getBlockById(originalBlock.getId());
-
-                    int newX = originalBlock.getX() + dx;
-                    int newY = originalBlock.getY() + dy;
-
-                    nextBoard.moveBlockOnBoard(blockToMoveOnNextBoard, newX, newY);
-
-                    GameState2 nextGameState = new GameState2(currentParentState);
-                    nextGameState.setBoard(nextBoard);
-                    nextGameState.incrementSteps();
-
-                    MoveRecord2 move = new MoveRecord2(originalBlock.getId(),
-                            originalBlock.getX(), originalBlock.getY(),
-                            newX, newY);
-
-                    List<MoveRecord2> newPath = new ArrayList<>(parentNode.getPath());
-                    newPath.add(move);
-
-                    successors.add(new SearchNode(nextGameState, newPath));
+            List<MoveRecord2> moves;
+            if (isWinState(snapshot)) {
+                moves = Collections.emptyList();
+            } else {
+                moves = solve(snapshot, monitor);
+                if (moves.isEmpty()) {
+                    moves = null;
                 }
             }
+            if (!monitor.isStopped()) {
+                memo.put(snapshot, moves);
+            }
+            return moves;
         }
-        return successors;
-    }
-    // 以上的所有东西都与AISolver当中运用单向的BFS是一样的
-
-
-
-    private GameState2 getWinState() {
-        Board2 winBoard = new Board2(); // 创建一个标准棋盘
-        Block2 caoCao = winBoard.getBlockById(GameLogic2.CAO_CAO_ID);
-        Board2 goalBoard = new Board2(); // Start with initial board
-        Block2 goalCaoCao = goalBoard.getBlockById(GameLogic2.CAO_CAO_ID);
-        Board2 finalBoard = new Board2(); // Start with default
-        finalBoard.initialize(); // Ensure it's the standard start
-        GameState2 winGameState = new GameState2();
-        Board2 winBoardState = winGameState.getBoard();
-        Block2 caoCaoToMove = winBoardState.getBlockById(GameLogic2.CAO_CAO_ID);
+        // 不放技能时从这个布局走到胜利的最短解法，已经赢了时是空的，没有解时是null
 
-        Board2 goalBoardSetup = new Board2(4, 5);
-        goalBoardSetup.blocks.put(1, new Block2(1, "曹操", 2, 2, 1, 3));
-        goalBoardSetup.blocks.put(2, new Block2(2, "关羽", 2, 1, 2, 2));
-        goalBoardSetup.blocks.put(3, new Block2(3, "张飞", 1, 2, 3, 0));
-        goalBoardSetup.blocks.put(4, new Block2(4, "赵云", 1, 2, 2, 0));
-        goalBoardSetup.blocks.put(5, new Block2(5, "马超", 1, 2, 1, 0));
-        goalBoardSetup.blocks.put(6, new Block2(6, "黄忠", 1, 2, 0, 0));
-        goalBoardSetup.blocks.put(7, new Block2(7, "兵1", 1, 1, 0, 2));
-        goalBoardSetup.blocks.put(8, new Block2(8, "兵2", 1, 1, 3, 3));
-        goalBoardSetup.blocks.put(9, new Block2(9, "兵3", 1, 1, 3, 4));
-        goalBoardSetup.blocks.put(10, new Block2(10, "兵4", 1, 1, 1, 2));
-        goalBoardSetup.grid = new int[5][4];
-        for (Block2 block : goalBoardSetup.blocks.values()) {
-            for (int y = 0; y < block.getHeight(); y++) {
-                for (int x = 0; x < block.getWidth(); x++) {
-                    if (goalBoardSetup.isValidCoordinate(block.getX() + x, block.getY() + y)) {
-                        goalBoardSetup.grid[block.getY() + y][block.getX() + x] = block.getId();
-                    }
-                }
+        private void offer(List<SkillPlan2.Skill> skills, List<MoveRecord2> moves, int cost) {
+            if (cost < bestCost || (cost == bestCost && skills.size() < bestSkills.size())) {
+                bestSkills = new ArrayList<>(skills);
+                bestMoves = moves;
+                bestCost = cost;
             }
         }
 
-        GameState2 goalState = new GameState2();
-        goalState.setBoard(goalBoardSetup);
-        goalState.setGameWon(true);
-        return goalState;
-    }
-    // 这个方法是双向BFS所特有的，它返回了由单向BFS推出来的胜利时的GameState
-
-    private List<MoveRecord2> reconstructPath(SearchNode meetNodeForward, SearchNode meetNodeBackward) {
-        List<MoveRecord2> path = new ArrayList<>(meetNodeForward.getPath());
-        List<MoveRecord2> backwardPath = meetNodeBackward.getPath();
-
-        // 反转后向路径并添加到前向路径
-        Collections.reverse(backwardPath);
-
-        for (MoveRecord2 move : backwardPath) {
-            path.add(new MoveRecord2(move.getBlockId(), move.getToX(), move.getToY(), move.getFromX(), move.getFromY()));
+        private void explore(BoardSnapshot snapshot, int bombUses, int teleportUses, List<SkillPlan2.Skill> fired, int spent) {
+            if (monitor.isStopped() || spent >= bestCost) {
+                return;
+            }
+            // 光放技能就已经不比找到的方案省了，接着往下放只会更多
+            List<MoveRecord2> moves = subSolve(snapshot);
+            if (moves != null) {
+                offer(fired, moves, spent + moves.size());
+            }
+            tryBomb(snapshot, bombUses, teleportUses, fired, spent);
+            tryTeleport(snapshot, bombUses, teleportUses, fired, spent);
         }
 
-        return path;
-    }
-    // 这个方法同样时双向BFS所特有的，它将正向推出来的路径和反向推出来的路径反过来以后合在了一起
-
-    public List<MoveRecord2> solve(GameState2 initialGameState) {
-        GameState2 goalState = getWinState();
-
-        if (isWinState(initialGameState.getBoard())) {
-            return Collections.emptyList();
-        }
-        if (goalState == null || initialGameState.getBoard().equals(goalState.getBoard())) {
-            System.err.println("AI: 目标状态无法确定或与初始状态相同。");
-            return Collections.emptyList();
+        private void tryBomb(BoardSnapshot snapshot, int bombUses, int teleportUses, List<SkillPlan2.Skill> fired, int spent) {
+            if (bombUses <= 0 || !snapshot.contains(GameLogic2.BOMB_TARGET_BLOCK_ID)) {
+                return;
+            }
+            BoardSnapshot bombed = withoutBlock(snapshot, GameLogic2.BOMB_TARGET_BLOCK_ID);
+            if (bombed == null) {
+                return;
+            }
+            fired.add(SkillPlan2.Skill.BOMB);
+            explore(bombed, bombUses - 1, teleportUses, fired, spent + bombCost);
+            fired.remove(fired.size() - 1);
         }
 
-
-        Queue<SearchNode> forwardQueue = new LinkedList<>();
-        Queue<SearchNode> backwardQueue = new LinkedList<>();
-        // 这里与之前单向有所不同，建立了两个队列，一个用来储存正向的节点，另一个用来储存逆向的节点
-        Map<String, SearchNode> forwardVisited = new HashMap<>();
-        Map<String, SearchNode> backwardVisited = new HashMap<>();
-        // 同样的，记录也有两份，而且不同的是这里用到Map替代之前的Set，
-        // 其实用起来差不多，只是这样与其对应的String能联系更加紧密
-
-        SearchNode startNode = new SearchNode(new GameState2(initialGameState), new ArrayList<>());
-        SearchNode goalNode = new SearchNode(new GameState2(goalState), new ArrayList<>());
-
-        String startKey = boardToString(startNode.getGameState().getBoard());
-        String goalKey = boardToString(goalNode.getGameState().getBoard());
-
-        forwardQueue.add(startNode);
-        forwardVisited.put(startKey, startNode);
-        backwardQueue.add(goalNode);
-        backwardVisited.put(goalKey, goalNode);
-
-        long statesProcessed = 0;
-
-        while (!forwardQueue.isEmpty() && !backwardQueue.isEmpty()) {
-
-            // 优先扩展较小的队列，能有效保证循环能够更快地进行
-            if (forwardQueue.size() <= backwardQueue.size()) {
-                int levelSize = forwardQueue.size();
-                for (int i = 0; i < levelSize; i++) {
-                    SearchNode currentNode = forwardQueue.poll();
-                    statesProcessed++;
-
-                    List<SearchNode> successors = generateSuccessorStates(currentNode);
-                    for (SearchNode successor : successors) {
-                        String key = boardToString(successor.getGameState().getBoard());
-                        if (backwardVisited.containsKey(key)) {
-                            System.out.println("AI: 找到解法! (前向遇到后向) 处理状态: " + statesProcessed);
-                            return reconstructPath(successor, backwardVisited.get(key));
-                        }
-                        if (!forwardVisited.containsKey(key)) {
-                            forwardVisited.put(key, successor);
-                            forwardQueue.add(successor);
-                        }
-                    }
-                }
-            } else {
-                int levelSize = backwardQueue.size();
-                for (int i = 0; i < levelSize; i++) {
-                    SearchNode currentNode = backwardQueue.poll();
-                    statesProcessed++;
-
-                    List<SearchNode> successors = generateSuccessorStates(currentNode);
-                    for (SearchNode successor : successors) {
-                        String key = boardToString(successor.getGameState().getBoard());
-                        if (forwardVisited.containsKey(key)) {
-                            System.out.println("AI: 找到解法! (后向遇到前向) 处理状态: " + statesProcessed);
-                            return reconstructPath(forwardVisited.get(key), successor);
-                        }
-                        if (!backwardVisited.containsKey(key)) {
-                            backwardVisited.put(key, successor);
-                            backwardQueue.add(successor);
-                        }
-                    }
-                }
+        private void tryTeleport(BoardSnapshot snapshot, int bombUses, int teleportUses, List<SkillPlan2.Skill> fired, int spent) {
+            if (teleportUses <= 0 || (!fired.isEmpty() && fired.get(fired.size() - 1) == SkillPlan2.Skill.BOMB)) {
+                return;
             }
-
-            if (statesProcessed > 1000000000) {
-                System.out.println("AI: 已处理超过 " + statesProcessed + " 个状态，搜索中止。");
-                return Collections.emptyList();
+            // 大挪移会把兵1放回来，刚炸完就大挪移不如直接大挪移
+            BoardSnapshot teleported = teleportTarget;
+            if (teleported == null || teleported.equals(snapshot)) {
+                return;
             }
+            fired.add(SkillPlan2.Skill.TELEPORT);
+            explore(teleported, bombUses, teleportUses - 1, fired, spent + teleportCost);
+            fired.remove(fired.size() - 1);
         }
-
-        System.out.println("AI: 未找到解法。处理状态: " + statesProcessed);
-        return Collections.emptyList();
     }
+    // solveWithSkills()一次调用用到的状态：每个布局的求解结果和目前最好的方案
+
+    private static BoardSnapshot withoutBlock(BoardSnapshot snapshot, int id) {
+        BoardSnapshot.Builder builder = new BoardSnapshot.Builder(snapshot.getWidth(), snapshot.getHeight());
+        for (int other = 1; other <= snapshot.getMaxId(); other++) {
+            if (other != id && snapshot.contains(other)
+                    && !builder.add(other, snapshot.getBlockWidth(other), snapshot.getBlockHeight(other), snapshot.getX(other), snapshot.getY(other))) {
+                return null;
+            }
+        }
+        long hash = snapshot.getZobristHash() ^ Zobrist.blockHash(id, snapshot.getWidth(), snapshot.getHeight(),
+                snapshot.getBlockWidth(id), snapshot.getBlockHeight(id), snapshot.getX(id), snapshot.getY(id));
+        return builder.build(hash);
+    }
+    // 和Board2.removeBlockById()一样去掉一个方块，Zobrist哈希里把它那几格的随机数异或掉
 }
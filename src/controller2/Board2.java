@@ -1,5 +1,13 @@
 package controller2;
 
+import controller.BoardSnapshot;
+import controller.LayoutGenerator;
+import controller.MoveMasks;
+import controller.SolverBoard;
+import controller.Zobrist;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -35,6 +43,12 @@ public class Board2 implements Serializable {
     private int height;//棋盘的高
     public int[][] grid;
     public Map<Integer, Block2> blocks;
+    private transient MoveMasks moveMasks;
+    private transient long occupancy;
+    private transient long zobristHash;
+    //occupancy用一个long记着哪些格子被占着（规则见MoveMasks），跟着方块的移动一起更新，GameLogic判断能不能走时只拿它做一次与运算
+    //zobristHash是整个棋盘的Zobrist哈希（规则见Zobrist），也是跟着方块的移动一起更新的
+    //这几个不进存档，读档时在readObject()里重新算
     //grid这个数组我准备用来储存每个小格的状态，即每个小格被id为什么的方块占领了
     //Map<>则是用来将每个方块和它的唯一的id对应起来，用Map<>后面要好查找很多
 
@@ -55,6 +69,8 @@ public class Board2 implements Serializable {
         this.height = height;
         this.grid = new int[height][width];
         this.blocks = new HashMap<>();
+        this.moveMasks = MoveMasks.forSize(width, height);
+        this.occupancy = MoveMasks.WALL;
 
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
@@ -66,6 +82,8 @@ public class Board2 implements Serializable {
 
     public void initialize() {
         this.blocks.clear();
+        this.occupancy = MoveMasks.WALL;
+        this.zobristHash = 0;
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
                 grid[i][j] = 0;
@@ -92,11 +110,33 @@ public class Board2 implements Serializable {
 
     }
 
+    public boolean initializeRandom(int minDistance, int maxDistance, Random random) {
+        List<Block2> randomBlocks = randomBlocks(new ArrayList<>(new Board2().blocks.values()), minDistance, maxDistance, random);
+        if (randomBlocks == null) {
+            return false;
+        }
+        this.blocks.clear();
+        this.occupancy = MoveMasks.WALL;
+        this.zobristHash = 0;
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                grid[i][j] = 0;
+            }
+        }
+        for (Block2 block2 : randomBlocks) {
+            addBlockToBoard(block2);
+        }
+        return true;
+    }
+    //和initialize()用同样的10个棋子，但摆成一个离胜利 minDistance 到 maxDistance 步的随机布局（见controller.LayoutGenerator），
+    //残局库还没准备好或者没有符合的布局时返回false，这时棋盘不会被改动
+
     private void addBlockToBoard(Block2 block2) {
         if (block2 == null) {
             return;
         }
         blocks.put(block2.getId(), block2);
+        updateCells(block2, true);
         //在添加到棋盘之前，顺便先让block在创建的Map里面与自己的ID对应起来，现在Map里面的序号和block是对应的
         for (int y = 0; y < block2.getHeight(); y++) {
             for (int j = 0; j < block2.getWidth(); j++) {
@@ -163,8 +203,10 @@ public class Board2 implements Serializable {
             }
         }
 
+        updateCells(block2, false);
         block2.setX(newX);
         block2.setY(newY);
+        updateCells(block2, true);
 
         //再标记新位置
         for (int i = 0; i < block2.getHeight(); i++) {
@@ -180,15 +222,68 @@ public class Board2 implements Serializable {
     //这个方法非常重要，它是用来移动一个方块的，将方块从某个地方移动到另一个坐标
 
 
+    public BoardSnapshot snapshot() {
+        if (!BoardSnapshot.supports(width, height)) {
+            return null;
+        }
+        BoardSnapshot.Builder builder = new BoardSnapshot.Builder(width, height);
+        for (Block2 block2 : blocks.values()) {
+            if (!builder.add(block2.getId(), block2.getWidth(), block2.getHeight(), block2.getX(), block2.getY())) {
+                return null;
+            }
+        }
+        return builder.build(zobristHash);
+    }
+    //生成一个不可变的快照（见BoardSnapshot），以后这个棋盘再怎么变快照都不会跟着变，棋盘或者方块太大放不进快照时返回null
+
+    public long getOccupancy() {
+        return occupancy;
+    }
+    //被占着的格子对应的bit是1，MoveMasks.WALL那一位永远是1
+
+    public long getZobristHash() {
+        return zobristHash;
+    }
+    //整个棋盘的64位哈希，不用扫描棋盘，AI、缓存和判断局面重复时可以直接拿它当key用
+    //（不同的局面碰巧哈希一样的可能性极小，但不是0，要完全确定还是用equals()）
+
+    public MoveMasks getMoveMasks() {
+        return moveMasks;
+    }
+    //这个宽高的棋盘对应的表，棋盘太大（超过63个格子）时是null
+
+    private void updateCells(Block2 block2, boolean occupied) {
+        zobristHash ^= Zobrist.blockHash(block2.getId(), width, height, block2.getWidth(), block2.getHeight(), block2.getX(), block2.getY());
+        if (moveMasks == null) {
+            return;
+        }
+        long mask = moveMasks.blockMask(block2.getWidth(), block2.getHeight(), block2.getX(), block2.getY());
+        occupancy = occupied ? occupancy | mask : occupancy & ~mask;
+    }
+    //把一个方块占的格子写进occupancy或者从里面清掉，同时把它那部分Zobrist哈希异或进去（放进和拿走都是异或），只动这个方块自己的几个格子
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        moveMasks = MoveMasks.forSize(width, height);
+        occupancy = MoveMasks.WALL;
+        zobristHash = 0;
+        for (Block2 block2 : blocks.values()) {
+            updateCells(block2, true);
+        }
+    }
+    //存档里没有occupancy和zobristHash，读档以后按blocks重新算一遍
+
+
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof Board2 board2)) return false;
+        if (zobristHash != board2.zobristHash) return false;
         return width == board2.width && height == board2.height && Objects.deepEquals(grid, board2.grid) && Objects.equals(blocks, board2.blocks);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(width, height, Arrays.deepHashCode(grid), blocks);
+        return Long.hashCode(zobristHash);
     }
     //重写了equals方法和hashCode方法方便后面实现撤销功能和AI算法中的判断
 
@@ -222,12 +317,25 @@ public class Board2 implements Serializable {
         for (int i = 0; i < this.height; i++) {
             this.grid[i] = Arrays.copyOf(other.grid[i], this.width);
         }
+        this.moveMasks = other.moveMasks;
+        this.occupancy = other.occupancy;
+        this.zobristHash = other.zobristHash;
     }
 
 
     // 这里加了一个类实现大挪移逻辑
+    public static final int TELEPORT_MIN_DISTANCE = 10;
+    public static final int TELEPORT_MAX_DISTANCE = 30;
+    // 大挪移以后的布局离胜利的步数（按格计），原来固定的那个布局是13步，随机的布局也要让它仍然是一个"捷径"
+
     public void setTeleportState() {
+        setTeleportState(new Random());
+    }
+
+    public void setTeleportState(Random random) {
         this.blocks.clear();
+        this.occupancy = MoveMasks.WALL;
+        this.zobristHash = 0;
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
                 grid[i][j] = EMPTY_CELL_ID;
@@ -257,13 +365,57 @@ public class Board2 implements Serializable {
         teleportBlocks.add(new Block2(9, "兵3", 1, 1, 1, 4));
         teleportBlocks.add(new Block2(10, "兵4", 1, 1, 3, 2));
 
-
-        for (Block2 block : teleportBlocks) {
+        List<Block2> randomBlocks = randomBlocks(teleportBlocks, TELEPORT_MIN_DISTANCE, TELEPORT_MAX_DISTANCE, random);
+        // 先从已经映射好的残局库里随机挑一个离胜利TELEPORT_MIN_DISTANCE到TELEPORT_MAX_DISTANCE步的布局，
+        // 残局库还没准备好或者挑不到时用上面这个固定的布局（界面线程上不读文件、不生成残局库）
+        for (Block2 block : randomBlocks != null ? randomBlocks : teleportBlocks) {
             addBlockToBoard(block);
         }
         System.out.println("棋盘发生“大挪移”");
     }
 
+    private List<Block2> randomBlocks(List<Block2> templateBlocks, int minDistance, int maxDistance, Random random) {
+        SolverBoard template = new SolverBoard(width, height);
+        template.setGoal(GameLogic2.WIN_TARGET_X, GameLogic2.WIN_TARGET_Y);
+        List<int[]> pieces = new ArrayList<>();
+        Map<Integer, Block2> byId = new HashMap<>();
+        for (Block2 block : templateBlocks) {
+            if (!template.addPiece(block.getId(), block.getWidth(), block.getHeight(), block.getX(), block.getY())) {
+                return null;
+            }
+            pieces.add(new int[]{block.getId(), block.getWidth(), block.getHeight()});
+            byId.put(block.getId(), block);
+        }
+        long layout = LayoutGenerator.randomLayout(template, minDistance, maxDistance, random);
+        List<int[]> placed = layout < 0 ? null : LayoutGenerator.place(layout, width, height, pieces, random);
+        if (placed == null) {
+            return null;
+        }
+        List<Block2> randomBlocks = new ArrayList<>();
+        for (int[] position : placed) {
+            Block2 block = byId.get(position[0]);
+            randomBlocks.add(new Block2(block.getId(), block.getName(), block.getWidth(), block.getHeight(), position[1], position[2]));
+        }
+        return randomBlocks;
+    }
+    //同样的10个棋子换成离胜利 minDistance 到 maxDistance 步的随机位置，生成不了时返回null
+
+    public void setTeleportState(Board2 target) {
+        this.blocks.clear();
+        this.occupancy = MoveMasks.WALL;
+        this.zobristHash = 0;
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                grid[i][j] = EMPTY_CELL_ID;
+            }
+        }
+        for (Block2 block : target.blocks.values()) {
+            addBlockToBoard(new Block2(block.getId(), block.getName(), block.getWidth(), block.getHeight(), block.getX(), block.getY()));
+        }
+        System.out.println("棋盘发生“大挪移”");
+    }
+    //直接变成事先准备好的target那样（GameLogic2提前抽好下一次大挪移的布局，AI才能算到放大挪移以后怎么走）
+
 
     // 这个方法是为了实现炸弹功能
     public boolean removeBlockById(int blockId) {
@@ -284,6 +436,7 @@ public class Board2 implements Serializable {
             }
         }
         // 从blocks映射中移除该棋子
+        updateCells(blockToRemove, false);
         blocks.remove(blockId);
         System.out.println("ID为 " + blockId + " 的棋子已被移除。");
         return true;
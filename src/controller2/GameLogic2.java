@@ -1,7 +1,11 @@
 package controller2;
 
+import controller.BoardSnapshot;
+import controller.MoveHistory;
+import controller.MoveMasks;
+
 import java.io.File;
-import java.util.Stack;
+import java.util.Random;
 
 /*
 *这个类给出了几个主要的方法：
@@ -18,6 +22,10 @@ public class GameLogic2 {
     //另外，其中的board又有isValidCoordinate()、getBlockIdAt()、getBlockById()、getBlocksCopy()、getGridCopy()、moveBlockOnBoard()这几个可能用到的方法
     private Block2 selectedBlock2;
     // 当前选中的方块
+    private volatile BoardSnapshot snapshot;
+    // 最近一次棋盘变化以后的快照，别的线程读棋盘时用它，见getSnapshot()
+    private Board2 nextTeleport;
+    // 下一次大挪移会变成的布局，第一次用到时才随机抽，大挪移以后再抽下一个，见getTeleportPreview()
 
 
     public static final int BOMB_TARGET_BLOCK_ID = 7;
@@ -25,6 +33,7 @@ public class GameLogic2 {
 
     public GameLogic2() {
         this.gameState2 = new GameState2();
+        publishSnapshot();
         this.selectedBlock2 = null;
     }
 
@@ -32,6 +41,16 @@ public class GameLogic2 {
         return gameState2;
     }
 
+    public BoardSnapshot getSnapshot() {
+        return snapshot;
+    }
+    //任何线程都可以调用，拿到的是最近一次走完以后的棋盘快照（见BoardSnapshot），不用加锁，也不用深拷贝GameState
+
+    private void publishSnapshot() {
+        snapshot = gameState2.getBoard().snapshot();
+    }
+    //棋盘每变一次（走一步、撤销、重置、读档）都要调用一次，把新的快照放进volatile变量里，别的线程马上就能看到
+
     public Block2 getSelectedBlock() {
         return selectedBlock2;
     }
@@ -68,6 +87,7 @@ public class GameLogic2 {
             board2.moveBlockOnBoard(selectedBlock2, selectedBlock2.getX() + direction2.getDx(), selectedBlock2.getY() + direction2.getDy());
             gameState2.incrementSteps();
             gameState2.addMoveToHistory(record);
+            publishSnapshot();
 
             if (checkWinCondition()) {
                 gameState2.setGameWon(true);
@@ -81,60 +101,21 @@ public class GameLogic2 {
 
 
     public boolean canMove(Block2 block2, int dx, int dy) {
-        if (block2 == null || (dx == 0 && dy == 0)) {
+        int direction = MoveMasks.direction(dx, dy);
+        if (block2 == null || direction < 0) {
             return false;
         }
 
         Board2 board2 = gameState2.getBoard();
-        int newX = block2.getX() + dx;
-        int newY = block2.getY() + dy;
-
-
-        if (newX < 0 || (newX + block2.getWidth()) > board2.getWidth() ||
-                newY < 0 || (newY + block2.getHeight()) > board2.getHeight()) {
+        MoveMasks masks = board2.getMoveMasks();
+        if (masks == null) {
+            System.out.println("The board is too large to check moves.");
             return false;
         }
-        //检查是否超越了grid的边界
-
-        if (dx > 0) {
-            for (int y = 0; y < block2.getHeight(); y++) {
-                int checkX = block2.getX() + block2.getWidth(); // 原方块右边界的右边一格
-                int checkY = block2.getY() + y;
-                int targetCellId = board2.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board2.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dx < 0) {
-            for (int y = 0; y < block2.getHeight(); y++) {
-                int checkX = block2.getX() - 1;
-                int checkY = block2.getY() + y;
-                int targetCellId = board2.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board2.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dy > 0) {
-            for (int x = 0; x < block2.getWidth(); x++) {
-                int checkX = block2.getX() + x;
-                int checkY = block2.getY() + block2.getHeight();
-                int targetCellId = board2.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board2.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dy < 0) {
-            for (int x = 0; x < block2.getWidth(); x++) {
-                int checkX = block2.getX() + x;
-                int checkY = block2.getY() - 1;
-                int targetCellId = board2.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board2.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        }
-        //检查要移动到的位置是不是有其他方块
-        return true;
+        long edgeMask = masks.edgeMask(block2.getWidth(), block2.getHeight(), block2.getX(), block2.getY(), direction);
+        //edgeMask是方块往这个方向走一格时新占据的那一排格子，走出grid的边界时是MoveMasks.WALL，
+        //所以越界和撞到其他方块都只要和棋盘的occupancy做一次与运算就能查出来
+        return MoveMasks.canMove(board2.getOccupancy(), edgeMask);
     }
     //这个方法只是为了moveSelectedBlock()这个方法的实现更加好写而写的方法，后面不能再使用这个
     //这个方法实现能不能移动的判断
@@ -151,6 +132,7 @@ public class GameLogic2 {
             if (block2ToMove != null) {
                 gameState2.getBoard().moveBlockOnBoard(block2ToMove, lastMove.getFromX(), lastMove.getFromY());
                 gameState2.decrementSteps();
+                publishSnapshot();
 
                 if (gameState2.isGameWon()) {
                     if (!checkWinConditionInternal()) {
@@ -163,13 +145,26 @@ public class GameLogic2 {
         }
         return false;
     }
-    //这个类是用来撤销移动的，如果返回true则能够清除Stack里面最上层的记录，再将选中的方块设定为这个被撤销过的方块
+    //这个类是用来撤销移动的，如果返回true则能够清除栈里面最上层的记录，再将选中的方块设定为这个被撤销过的方块
 
 
     public void resetGame() {
         gameState2.resetGame();
+        publishSnapshot();
+        this.selectedBlock2 = null;
+    }
+
+    public boolean newRandomGame(int minDistance, int maxDistance) {
+        gameState2.resetGame();
+        boolean randomized = gameState2.getBoard().initializeRandom(minDistance, maxDistance, new Random());
+        if (!randomized) {
+            System.out.println("没能生成随机布局，使用默认的开局。");
+        }
+        publishSnapshot();
         this.selectedBlock2 = null;
+        return randomized;
     }
+    //新开一局，棋盘换成一个离胜利 minDistance 到 maxDistance 步的随机布局（见controller.LayoutGenerator），生成不了时和resetGame()一样
 
     public boolean checkWinCondition() {
         if (gameState2.isGameWon()) {
@@ -207,6 +202,7 @@ public class GameLogic2 {
         GameState2 loadedState = GameDataStorage2.loadGameFromFile(file);
         if (loadedState != null) {
             this.gameState2 = loadedState;
+            publishSnapshot();
             this.selectedBlock2 = null;
             //重载游戏以后清空被选中的方块
 
@@ -234,16 +230,36 @@ public class GameLogic2 {
         // 保存当前状态的关键信息
         int currentSteps = gameState2.getSteps();
         long currentTime = gameState2.getElapsedTimeInSeconds();
-        Stack<MoveRecord2> currentHistory = new Stack<>();
-        currentHistory.addAll(gameState2.getMoveHistory()); // 深拷贝历史记录
+        MoveHistory currentHistory = new MoveHistory(gameState2.getMoveHistory()); // 深拷贝历史记录
 
-        gameState2.getBoard().setTeleportState(); // 改变棋盘布局
+        gameState2.getBoard().setTeleportState(takeTeleportTarget()); // 改变棋盘布局，下一次大挪移换一个新的随机布局
+        publishSnapshot();
 
         gameState2.setGameWon(checkWinConditionInternal()); // 检查新布局是否直接胜利
         this.selectedBlock2 = null;
         System.out.println("棋盘已使用“大挪移”。");
     }
 
+    private synchronized Board2 teleportTarget() {
+        if (nextTeleport == null) {
+            nextTeleport = new Board2();
+            nextTeleport.setTeleportState();
+        }
+        return nextTeleport;
+    }
+
+    private synchronized Board2 takeTeleportTarget() {
+        Board2 target = teleportTarget();
+        nextTeleport = null;
+        return target;
+    }
+    //取走这一次的目标布局，和getTeleportPreview()用同一把锁，AI线程不会看到一半换掉的nextTeleport
+
+    public synchronized BoardSnapshot getTeleportPreview() {
+        return teleportTarget().snapshot();
+    }
+    //下一次大挪移以后棋盘会是什么样子，AI规划要不要放大挪移时用（见AISolver2.solveWithSkills()）
+
     public boolean useBomb() {
         if (gameState2.isGameWon()) {
             System.out.println("游戏已胜利，无法使用“炸弹”。");
@@ -253,6 +269,7 @@ public class GameLogic2 {
         if (board.getBlockById(BOMB_TARGET_BLOCK_ID) != null) {
             boolean removed = board.removeBlockById(BOMB_TARGET_BLOCK_ID);
             if (removed) {
+                publishSnapshot();
                 System.out.println("“炸弹”已使用！棋子 ID " + BOMB_TARGET_BLOCK_ID + " 已被移除。");
                 this.selectedBlock2 = null;
                 if (checkWinConditionInternal()) {
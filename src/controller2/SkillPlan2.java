@@ -0,0 +1,67 @@
+package controller2;
+
+import controller.BoardSnapshot;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+* 这个类是AISolver2.solveWithSkills()的结果：先按顺序放哪些技能，再走哪些步
+* 1.getSkills()是要先放的技能（可能是空的，说明不放技能最快），放完以后再依次走getMoves()里的每一步
+* 2.getCost()是整个方案的代价：走的步数加上每个技能的代价（见AISolver2.DEFAULT_SKILL_COST）
+* 3.getPlainMoves()是完全不用技能时的最短解法，玩家不想放技能时可以直接演示它，没有解时是null
+* 4.getTeleportTarget()是规划时假定的大挪移目标布局（没考虑大挪移时是null），
+*   下一次大挪移的目标换了以后这个方案就不能再用了（比如后台预判好的方案，见GameFrame2.handleAISolve()）
+* 这个类创建以后不会再变
+ */
+public class SkillPlan2 {
+    public enum Skill {
+        BOMB,
+        TELEPORT
+    }
+    //BOMB对应GameLogic2.useBomb()，TELEPORT对应GameLogic2.teleportBoard()
+
+    private final List<Skill> skills;
+    private final List<MoveRecord2> moves;
+    private final int cost;
+    private final List<MoveRecord2> plainMoves;
+    private final BoardSnapshot teleportTarget;
+
+    public SkillPlan2(List<Skill> skills, List<MoveRecord2> moves, int cost, List<MoveRecord2> plainMoves, BoardSnapshot teleportTarget) {
+        this.skills = Collections.unmodifiableList(skills);
+        this.moves = Collections.unmodifiableList(moves);
+        this.cost = cost;
+        this.plainMoves = plainMoves == null ? null : Collections.unmodifiableList(plainMoves);
+        this.teleportTarget = teleportTarget;
+    }
+
+    public List<Skill> getSkills() {
+        return skills;
+    }
+
+    public List<MoveRecord2> getMoves() {
+        return moves;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    public List<MoveRecord2> getPlainMoves() {
+        return plainMoves;
+    }
+
+    public BoardSnapshot getTeleportTarget() {
+        return teleportTarget;
+    }
+
+    public boolean usesSkills() {
+        return !skills.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "SkillPlan2{skills=" + skills + ", moves=" + moves.size() + ", cost=" + cost
+                + ", plainMoves=" + (plainMoves == null ? "none" : plainMoves.size()) + "}";
+    }
+}
@@ -1,5 +1,13 @@
 package controller3;
 
+import controller.BoardSnapshot;
+import controller.LayoutGenerator;
+import controller.MoveMasks;
+import controller.SolverBoard;
+import controller.Zobrist;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -35,6 +43,12 @@ public class Board3 implements Serializable {
     private int height;//棋盘的高
     public int[][] grid;
     public Map<Integer, Block3> blocks;
+    private transient MoveMasks moveMasks;
+    private transient long occupancy;
+    private transient long zobristHash;
+    //occupancy用一个long记着哪些格子被占着（规则见MoveMasks），跟着方块的移动一起更新，GameLogic判断能不能走时只拿它做一次与运算
+    //zobristHash是整个棋盘的Zobrist哈希（规则见Zobrist），也是跟着方块的移动一起更新的
+    //这几个不进存档，读档时在readObject()里重新算
     //grid这个数组我准备用来储存每个小格的状态，即每个小格被id为什么的方块占领了
     //Map<>则是用来将每个方块和它的唯一的id对应起来，用Map<>后面要好查找很多
 
@@ -55,6 +69,8 @@ public class Board3 implements Serializable {
         this.height = height;
         this.grid = new int[height][width];
         this.blocks = new HashMap<>();
+        this.moveMasks = MoveMasks.forSize(width, height);
+        this.occupancy = MoveMasks.WALL;
 
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
@@ -66,6 +82,8 @@ public class Board3 implements Serializable {
 
     public void initialize() {
         this.blocks.clear();
+        this.occupancy = MoveMasks.WALL;
+        this.zobristHash = 0;
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
                 grid[i][j] = 0;
@@ -99,11 +117,46 @@ public class Board3 implements Serializable {
         //X指的是10（为了对齐）
     }
 
+    public boolean initializeRandom(int minDistance, int maxDistance, Random random) {
+        Map<Integer, Block3> standardBlocks = new Board3().getBlocksCopy();
+        SolverBoard template = new SolverBoard(width, height);
+        template.setGoal(GameLogic3.WIN_TARGET_X, GameLogic3.WIN_TARGET_Y);
+        List<int[]> pieces = new ArrayList<>();
+        for (Block3 block : standardBlocks.values()) {
+            if (!template.addPiece(block.getId(), block.getWidth(), block.getHeight(), block.getX(), block.getY())) {
+                return false;
+            }
+            pieces.add(new int[]{block.getId(), block.getWidth(), block.getHeight()});
+        }
+        long layout = LayoutGenerator.randomLayout(template, minDistance, maxDistance, random);
+        List<int[]> placed = layout < 0 ? null : LayoutGenerator.place(layout, width, height, pieces, random);
+        if (placed == null) {
+            return false;
+        }
+
+        this.blocks.clear();
+        this.occupancy = MoveMasks.WALL;
+        this.zobristHash = 0;
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                grid[i][j] = 0;
+            }
+        }
+        for (int[] position : placed) {
+            Block3 block = standardBlocks.get(position[0]);
+            addBlockToBoard(new Block3(block.getId(), block.getName(), block.getWidth(), block.getHeight(), position[1], position[2]));
+        }
+        return true;
+    }
+    //和initialize()用同样的10个棋子，但摆成一个离胜利 minDistance 到 maxDistance 步的随机布局（见controller.LayoutGenerator），
+    //残局库还没准备好或者没有符合的布局时返回false，这时棋盘不会被改动
+
     private void addBlockToBoard(Block3 block3) {
         if (block3 == null) {
             return;
         }
         blocks.put(block3.getId(), block3);
+        updateCells(block3, true);
         //在添加到棋盘之前，顺便先让block在创建的Map里面与自己的ID对应起来，现在Map里面的序号和block是对应的
         for (int y = 0; y < block3.getHeight(); y++) {
             for (int j = 0; j < block3.getWidth(); j++) {
@@ -170,8 +223,10 @@ public class Board3 implements Serializable {
             }
         }
 
+        updateCells(block3, false);
         block3.setX(newX);
         block3.setY(newY);
+        updateCells(block3, true);
 
         //再标记新位置
         for (int i = 0; i < block3.getHeight(); i++) {
@@ -187,15 +242,68 @@ public class Board3 implements Serializable {
     //这个方法非常重要，它是用来移动一个方块的，将方块从某个地方移动到另一个坐标
 
 
+    public BoardSnapshot snapshot() {
+        if (!BoardSnapshot.supports(width, height)) {
+            return null;
+        }
+        BoardSnapshot.Builder builder = new BoardSnapshot.Builder(width, height);
+        for (Block3 block3 : blocks.values()) {
+            if (!builder.add(block3.getId(), block3.getWidth(), block3.getHeight(), block3.getX(), block3.getY())) {
+                return null;
+            }
+        }
+        return builder.build(zobristHash);
+    }
+    //生成一个不可变的快照（见BoardSnapshot），以后这个棋盘再怎么变快照都不会跟着变，棋盘或者方块太大放不进快照时返回null
+
+    public long getOccupancy() {
+        return occupancy;
+    }
+    //被占着的格子对应的bit是1，MoveMasks.WALL那一位永远是1
+
+    public long getZobristHash() {
+        return zobristHash;
+    }
+    //整个棋盘的64位哈希，不用扫描棋盘，AI、缓存和判断局面重复时可以直接拿它当key用
+    //（不同的局面碰巧哈希一样的可能性极小，但不是0，要完全确定还是用equals()）
+
+    public MoveMasks getMoveMasks() {
+        return moveMasks;
+    }
+    //这个宽高的棋盘对应的表，棋盘太大（超过63个格子）时是null
+
+    private void updateCells(Block3 block3, boolean occupied) {
+        zobristHash ^= Zobrist.blockHash(block3.getId(), width, height, block3.getWidth(), block3.getHeight(), block3.getX(), block3.getY());
+        if (moveMasks == null) {
+            return;
+        }
+        long mask = moveMasks.blockMask(block3.getWidth(), block3.getHeight(), block3.getX(), block3.getY());
+        occupancy = occupied ? occupancy | mask : occupancy & ~mask;
+    }
+    //把一个方块占的格子写进occupancy或者从里面清掉，同时把它那部分Zobrist哈希异或进去（放进和拿走都是异或），只动这个方块自己的几个格子
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        moveMasks = MoveMasks.forSize(width, height);
+        occupancy = MoveMasks.WALL;
+        zobristHash = 0;
+        for (Block3 block3 : blocks.values()) {
+            updateCells(block3, true);
+        }
+    }
+    //存档里没有occupancy和zobristHash，读档以后按blocks重新算一遍
+
+
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof Board3 board3)) return false;
+        if (zobristHash != board3.zobristHash) return false;
         return width == board3.width && height == board3.height && Objects.deepEquals(grid, board3.grid) && Objects.equals(blocks, board3.blocks);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(width, height, Arrays.deepHashCode(grid), blocks);
+        return Long.hashCode(zobristHash);
     }
     //重写了equals方法和hashCode方法方便后面实现撤销功能和AI算法中的判断
 
@@ -229,4 +337,7 @@ public class Board3 implements Serializable {
         for (int i = 0; i < this.height; i++) {
             this.grid[i] = Arrays.copyOf(other.grid[i], this.width);
         }
+        this.moveMasks = other.moveMasks;
+        this.occupancy = other.occupancy;
+        this.zobristHash = other.zobristHash;
     }}
@@ -1,6 +1,10 @@
 package controller3;
 
+import controller.BoardSnapshot;
+import controller.MoveMasks;
+
 import java.io.File;
+import java.util.Random;
 
 /*
 *这个类给出了几个主要的方法：
@@ -17,9 +21,12 @@ public class GameLogic3 {
     //另外，其中的board又有isValidCoordinate()、getBlockIdAt()、getBlockById()、getBlocksCopy()、getGridCopy()、moveBlockOnBoard()这几个可能用到的方法
     private Block3 selectedBlock3;
     // 当前选中的方块
+    private volatile BoardSnapshot snapshot;
+    // 最近一次棋盘变化以后的快照，别的线程读棋盘时用它，见getSnapshot()
 
     public GameLogic3() {
         this.gameState3 = new GameState3();
+        publishSnapshot();
         this.selectedBlock3 = null;
     }
 
@@ -27,6 +34,16 @@ public class GameLogic3 {
         return gameState3;
     }
 
+    public BoardSnapshot getSnapshot() {
+        return snapshot;
+    }
+    //任何线程都可以调用，拿到的是最近一次走完以后的棋盘快照（见BoardSnapshot），不用加锁，也不用深拷贝GameState
+
+    private void publishSnapshot() {
+        snapshot = gameState3.getBoard().snapshot();
+    }
+    //棋盘每变一次（走一步、撤销、重置、读档）都要调用一次，把新的快照放进volatile变量里，别的线程马上就能看到
+
     public Block3 getSelectedBlock() {
         return selectedBlock3;
     }
@@ -63,6 +80,7 @@ public class GameLogic3 {
             board3.moveBlockOnBoard(selectedBlock3, selectedBlock3.getX() + direction3.getDx(), selectedBlock3.getY() + direction3.getDy());
             gameState3.incrementSteps();
             gameState3.addMoveToHistory(record);
+            publishSnapshot();
 
             if (checkWinCondition()) {
                 gameState3.setGameWon(true);
@@ -82,60 +100,21 @@ public class GameLogic3 {
      * @return 如果可以移动返回true，否则返回false
      */
     public boolean canMove(Block3 block3, int dx, int dy) {
-        if (block3 == null || (dx == 0 && dy == 0)) {
+        int direction = MoveMasks.direction(dx, dy);
+        if (block3 == null || direction < 0) {
             return false;
         }
 
         Board3 board3 = gameState3.getBoard();
-        int newX = block3.getX() + dx;
-        int newY = block3.getY() + dy;
-
-
-        if (newX < 0 || (newX + block3.getWidth()) > board3.getWidth() ||
-                newY < 0 || (newY + block3.getHeight()) > board3.getHeight()) {
+        MoveMasks masks = board3.getMoveMasks();
+        if (masks == null) {
+            System.out.println("The board is too large to check moves.");
             return false;
         }
-        //检查是否超越了grid的边界
-
-        if (dx > 0) {
-            for (int y = 0; y < block3.getHeight(); y++) {
-                int checkX = block3.getX() + block3.getWidth(); // 原方块右边界的右边一格
-                int checkY = block3.getY() + y;
-                int targetCellId = board3.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board3.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dx < 0) {
-            for (int y = 0; y < block3.getHeight(); y++) {
-                int checkX = block3.getX() - 1;
-                int checkY = block3.getY() + y;
-                int targetCellId = board3.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board3.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dy > 0) {
-            for (int x = 0; x < block3.getWidth(); x++) {
-                int checkX = block3.getX() + x;
-                int checkY = block3.getY() + block3.getHeight();
-                int targetCellId = board3.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board3.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dy < 0) {
-            for (int x = 0; x < block3.getWidth(); x++) {
-                int checkX = block3.getX() + x;
-                int checkY = block3.getY() - 1;
-                int targetCellId = board3.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board3.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        }
-        //检查要移动到的位置是不是有其他方块
-        return true;
+        long edgeMask = masks.edgeMask(block3.getWidth(), block3.getHeight(), block3.getX(), block3.getY(), direction);
+        //edgeMask是方块往这个方向走一格时新占据的那一排格子，走出grid的边界时是MoveMasks.WALL，
+        //所以越界和撞到其他方块都只要和棋盘的occupancy做一次与运算就能查出来
+        return MoveMasks.canMove(board3.getOccupancy(), edgeMask);
     }
     //这个方法只是为了moveSelectedBlock()这个方法的实现更加好写而写的方法，后面不能再使用这个
     //这个方法实现能不能移动的判断
@@ -152,6 +131,7 @@ public class GameLogic3 {
             if (block3ToMove != null) {
                 gameState3.getBoard().moveBlockOnBoard(block3ToMove, lastMove.getFromX(), lastMove.getFromY());
                 gameState3.decrementSteps();
+                publishSnapshot();
 
                 if (gameState3.isGameWon()) {
                     if (!checkWinConditionInternal()) {
@@ -164,13 +144,26 @@ public class GameLogic3 {
         }
         return false;
     }
-    //这个类是用来撤销移动的，如果返回true则能够清除Stack里面最上层的记录，再将选中的方块设定为这个被撤销过的方块
+    //这个类是用来撤销移动的，如果返回true则能够清除栈里面最上层的记录，再将选中的方块设定为这个被撤销过的方块
 
 
     public void resetGame() {
         gameState3.resetGame();
+        publishSnapshot();
+        this.selectedBlock3 = null;
+    }
+
+    public boolean newRandomGame(int minDistance, int maxDistance) {
+        gameState3.resetGame();
+        boolean randomized = gameState3.getBoard().initializeRandom(minDistance, maxDistance, new Random());
+        if (!randomized) {
+            System.out.println("没能生成随机布局，使用默认的开局。");
+        }
+        publishSnapshot();
         this.selectedBlock3 = null;
+        return randomized;
     }
+    //新开一局，棋盘换成一个离胜利 minDistance 到 maxDistance 步的随机布局（见controller.LayoutGenerator），生成不了时和resetGame()一样
 
     public boolean checkWinCondition() {
         if (gameState3.isGameWon()) {
@@ -208,6 +201,7 @@ public class GameLogic3 {
         GameState3 loadedState = GameDataStorage3.loadGameFromFile(file);
         if (loadedState != null) {
             this.gameState3 = loadedState;
+            publishSnapshot();
             this.selectedBlock3 = null;
             //重载游戏以后清空被选中的方块
 
@@ -1,5 +1,11 @@
 package controller4;
 
+import controller.BoardSnapshot;
+import controller.MoveMasks;
+import controller.Zobrist;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -35,6 +41,12 @@ public class Board4 implements Serializable {
     private int height;//棋盘的高
     private int[][] grid;
     private Map<Integer, Block4> blocks;
+    private transient MoveMasks moveMasks;
+    private transient long occupancy;
+    private transient long zobristHash;
+    //occupancy用一个long记着哪些格子被占着（规则见MoveMasks），跟着方块的移动一起更新，GameLogic判断能不能走时只拿它做一次与运算
+    //zobristHash是整个棋盘的Zobrist哈希（规则见Zobrist），也是跟着方块的移动一起更新的
+    //这几个不进存档，读档时在readObject()里重新算
     //grid这个数组我准备用来储存每个小格的状态，即每个小格被id为什么的方块占领了
     //Map<>则是用来将每个方块和它的唯一的id对应起来，用Map<>后面要好查找很多
 
@@ -55,6 +67,8 @@ public class Board4 implements Serializable {
         this.height = height;
         this.grid = new int[height][width];
         this.blocks = new HashMap<>();
+        this.moveMasks = MoveMasks.forSize(width, height);
+        this.occupancy = MoveMasks.WALL;
 
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
@@ -66,6 +80,8 @@ public class Board4 implements Serializable {
 
     public void initialize() {
         this.blocks.clear();
+        this.occupancy = MoveMasks.WALL;
+        this.zobristHash = 0;
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
                 grid[i][j] = 0;
@@ -104,6 +120,7 @@ public class Board4 implements Serializable {
             return;
         }
         blocks.put(block4.getId(), block4);
+        updateCells(block4, true);
         //在添加到棋盘之前，顺便先让block在创建的Map里面与自己的ID对应起来，现在Map里面的序号和block是对应的
         for (int y = 0; y < block4.getHeight(); y++) {
             for (int j = 0; j < block4.getWidth(); j++) {
@@ -170,8 +187,10 @@ public class Board4 implements Serializable {
             }
         }
 
+        updateCells(block4, false);
         block4.setX(newX);
         block4.setY(newY);
+        updateCells(block4, true);
 
         //再标记新位置
         for (int i = 0; i < block4.getHeight(); i++) {
@@ -187,15 +206,68 @@ public class Board4 implements Serializable {
     //这个方法非常重要，它是用来移动一个方块的，将方块从某个地方移动到另一个坐标
 
 
+    public BoardSnapshot snapshot() {
+        if (!BoardSnapshot.supports(width, height)) {
+            return null;
+        }
+        BoardSnapshot.Builder builder = new BoardSnapshot.Builder(width, height);
+        for (Block4 block4 : blocks.values()) {
+            if (!builder.add(block4.getId(), block4.getWidth(), block4.getHeight(), block4.getX(), block4.getY())) {
+                return null;
+            }
+        }
+        return builder.build(zobristHash);
+    }
+    //生成一个不可变的快照（见BoardSnapshot），以后这个棋盘再怎么变快照都不会跟着变，棋盘或者方块太大放不进快照时返回null
+
+    public long getOccupancy() {
+        return occupancy;
+    }
+    //被占着的格子对应的bit是1，MoveMasks.WALL那一位永远是1
+
+    public long getZobristHash() {
+        return zobristHash;
+    }
+    //整个棋盘的64位哈希，不用扫描棋盘，AI、缓存和判断局面重复时可以直接拿它当key用
+    //（不同的局面碰巧哈希一样的可能性极小，但不是0，要完全确定还是用equals()）
+
+    public MoveMasks getMoveMasks() {
+        return moveMasks;
+    }
+    //这个宽高的棋盘对应的表，棋盘太大（超过63个格子）时是null
+
+    private void updateCells(Block4 block4, boolean occupied) {
+        zobristHash ^= Zobrist.blockHash(block4.getId(), width, height, block4.getWidth(), block4.getHeight(), block4.getX(), block4.getY());
+        if (moveMasks == null) {
+            return;
+        }
+        long mask = moveMasks.blockMask(block4.getWidth(), block4.getHeight(), block4.getX(), block4.getY());
+        occupancy = occupied ? occupancy | mask : occupancy & ~mask;
+    }
+    //把一个方块占的格子写进occupancy或者从里面清掉，同时把它那部分Zobrist哈希异或进去（放进和拿走都是异或），只动这个方块自己的几个格子
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        moveMasks = MoveMasks.forSize(width, height);
+        occupancy = MoveMasks.WALL;
+        zobristHash = 0;
+        for (Block4 block4 : blocks.values()) {
+            updateCells(block4, true);
+        }
+    }
+    //存档里没有occupancy和zobristHash，读档以后按blocks重新算一遍
+
+
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof Board4 board4)) return false;
+        if (zobristHash != board4.zobristHash) return false;
         return width == board4.width && height == board4.height && Objects.deepEquals(grid, board4.grid) && Objects.equals(blocks, board4.blocks);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(width, height, Arrays.deepHashCode(grid), blocks);
+        return Long.hashCode(zobristHash);
     }
     //重写了equals方法和hashCode方法方便后面实现撤销功能和AI算法中的判断
 
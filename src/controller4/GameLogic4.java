@@ -1,5 +1,8 @@
 package controller4;
 
+import controller.BoardSnapshot;
+import controller.MoveMasks;
+
 /*
 *这个类给出了几个主要的方法：
 * 1.selectBlockAt()输入一个grid的坐标，后续可能要和鼠标点击事件结合起来，返回true则有效地点击了某个方块，把方块传输给了变量selectedBlock
@@ -15,9 +18,12 @@ public class GameLogic4 {
     //另外，其中的board又有isValidCoordinate()、getBlockIdAt()、getBlockById()、getBlocksCopy()、getGridCopy()、moveBlockOnBoard()这几个可能用到的方法
     private Block4 selectedBlock4;
     // 当前选中的方块
+    private volatile BoardSnapshot snapshot;
+    // 最近一次棋盘变化以后的快照，别的线程读棋盘时用它，见getSnapshot()
 
     public GameLogic4() {
         this.gameState4 = new GameState4();
+        publishSnapshot();
         this.selectedBlock4 = null;
     }
 
@@ -25,6 +31,16 @@ public class GameLogic4 {
         return gameState4;
     }
 
+    public BoardSnapshot getSnapshot() {
+        return snapshot;
+    }
+    //任何线程都可以调用，拿到的是最近一次走完以后的棋盘快照（见BoardSnapshot），不用加锁，也不用深拷贝GameState
+
+    private void publishSnapshot() {
+        snapshot = gameState4.getBoard().snapshot();
+    }
+    //棋盘每变一次（走一步、撤销、重置、读档）都要调用一次，把新的快照放进volatile变量里，别的线程马上就能看到
+
     public Block4 getSelectedBlock() {
         return selectedBlock4;
     }
@@ -61,6 +77,7 @@ public class GameLogic4 {
             board4.moveBlockOnBoard(selectedBlock4, selectedBlock4.getX() + direction4.getDx(), selectedBlock4.getY() + direction4.getDy());
             gameState4.incrementSteps();
             gameState4.addMoveToHistory(record);
+            publishSnapshot();
 
             if (checkWinCondition()) {
                 gameState4.setGameWon(true);
@@ -73,60 +90,21 @@ public class GameLogic4 {
     //另外，注意这个方法里面有一个selectedBlock的选中，所以这个方法再后面的使用的时候需要先用一次selectedBlockAt()这个方法，更新一下selectedBlock
 
     public boolean canMove(Block4 block4, int dx, int dy) {
-        if (block4 == null || (dx == 0 && dy == 0)) {
+        int direction = MoveMasks.direction(dx, dy);
+        if (block4 == null || direction < 0) {
             return false;
         }
 
         Board4 board4 = gameState4.getBoard();
-        int newX = block4.getX() + dx;
-        int newY = block4.getY() + dy;
-
-
-        if (newX < 0 || (newX + block4.getWidth()) > board4.getWidth() ||
-                newY < 0 || (newY + block4.getHeight()) > board4.getHeight()) {
+        MoveMasks masks = board4.getMoveMasks();
+        if (masks == null) {
+            System.out.println("The board is too large to check moves.");
             return false;
         }
-        //检查是否超越了grid的边界
-
-        if (dx > 0) {
-            for (int y = 0; y < block4.getHeight(); y++) {
-                int checkX = block4.getX() + block4.getWidth(); // 原方块右边界的右边一格
-                int checkY = block4.getY() + y;
-                int targetCellId = board4.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board4.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dx < 0) {
-            for (int y = 0; y < block4.getHeight(); y++) {
-                int checkX = block4.getX() - 1;
-                int checkY = block4.getY() + y;
-                int targetCellId = board4.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board4.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dy > 0) {
-            for (int x = 0; x < block4.getWidth(); x++) {
-                int checkX = block4.getX() + x;
-                int checkY = block4.getY() + block4.getHeight();
-                int targetCellId = board4.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board4.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        } else if (dy < 0) {
-            for (int x = 0; x < block4.getWidth(); x++) {
-                int checkX = block4.getX() + x;
-                int checkY = block4.getY() - 1;
-                int targetCellId = board4.getBlockIdAt(checkX, checkY);
-                if (targetCellId != Board4.EMPTY_CELL_ID) {
-                    return false;
-                }
-            }
-        }
-        //检查要移动到的位置是不是有其他方块
-        return true;
+        long edgeMask = masks.edgeMask(block4.getWidth(), block4.getHeight(), block4.getX(), block4.getY(), direction);
+        //edgeMask是方块往这个方向走一格时新占据的那一排格子，走出grid的边界时是MoveMasks.WALL，
+        //所以越界和撞到其他方块都只要和棋盘的occupancy做一次与运算就能查出来
+        return MoveMasks.canMove(board4.getOccupancy(), edgeMask);
     }
     //这个方法只是为了moveSelectedBlock()这个方法的实现更加好写而写的方法，后面不能再使用这个
     //这个方法实现能不能移动的判断
@@ -143,6 +121,7 @@ public class GameLogic4 {
             if (block4ToMove != null) {
                 gameState4.getBoard().moveBlockOnBoard(block4ToMove, lastMove.getFromX(), lastMove.getFromY());
                 gameState4.decrementSteps();
+                publishSnapshot();
 
                 if (gameState4.isGameWon()) {
                     if (!checkWinConditionInternal()) {
@@ -155,11 +134,12 @@ public class GameLogic4 {
         }
         return false;
     }
-    //这个类是用来撤销移动的，如果返回true则能够清除Stack里面最上层的记录，再将选中的方块设定为这个被撤销过的方块
+    //这个类是用来撤销移动的，如果返回true则能够清除栈里面最上层的记录，再将选中的方块设定为这个被撤销过的方块
 
 
     public void resetGame() {
         gameState4.resetGame();
+        publishSnapshot();
         this.selectedBlock4 = null;
     }
 
@@ -1,21 +1,25 @@
 package controller4;
 
 
+import controller.MoveHistory;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Objects;
-import java.util.Stack;
+import java.util.List;
 
 /*
 *这个类提供了一下好用的方法：
 * 1.它的几个field（board4,steps,moveHistory,elapsedTimeInSeconds,gameWon)的getter，注意gameWon的getter叫做isGameWon()；
 * 2.对于steps这个给了增加步数的方法incrementSteps()，以及减少步数的方法decrementSteps()
 * 3.对于elapsedTimeInSeconds这个方法给出了增加时间的方法incrementElapsedTime()
-* 4.对于moveHistory这个field给出了addMoveToHistory()来添加记录到Stack里面，popMoveFromHistory()来移除Stack最上面的记录，clearMoveHistory()用来清楚Stack里面的全部记录
+* 4.对于moveHistory这个field给出了addMoveToHistory()来添加记录到栈里面，popMoveFromHistory()来移除栈最上面的记录，clearMoveHistory()用来清楚栈里面的全部记录
 * 5.还有一个resetGame()方法可以用来把棋盘重置
 * 6.补充一点：
-* 要完成撤销工作，Stack<>是一个非常好的选择，有先入后出的性质
-* Stack常用的与撤销相关的方法：.push()用来把moveRecord填入最上面， .pop()用来移除最上面的moveRecord,
-* .peek()用来查看最上面的moveRecord， .empty()用来检测Stack是不是空的 .clear()用来清除Stack
+* 要完成撤销工作，栈是一个非常好的选择，有先入后出的性质，这里用的是controller.MoveHistory，每一步只存一个int（见MoveHistory），
+* 所以getMoveHistory()拿到的是压好的int，要MoveRecord的话用popMoveFromHistory()
+* 7.旧版本的存档里moveHistory是Stack，读档时readObject()会把它转换成MoveHistory，所以新旧存档都能读
  */
 
 public class GameState4 implements Serializable {
@@ -23,11 +27,9 @@ public class GameState4 implements Serializable {
     //同样定义序列号
     private Board4 board4;
     private int steps;
-    Stack<MoveRecord4> moveHistory;
+    MoveHistory moveHistory;
     // 用于撤销操作
-    //要完成撤销工作，Stack<>是一个非常好的选择，有先入后出的性质
-    //Stack常用的与撤销相关的方法：.push()用来把moveRecord填入最上面， .pop()用来移除最上面的moveRecord,
-    //.peek()用来查看最上面的moveRecord， .empty()用来检测Stack是不是空的 .clear()用来清除Stack
+    //每一步压成一个int存在MoveHistory里，push()、pop()、peek()都是O(1)的，比原来每一步一个MoveRecord对象省很多内存
     private int elapsedTimeInSeconds;
     // 游戏已进行的时间（秒）
     private boolean gameWon;
@@ -37,7 +39,7 @@ public class GameState4 implements Serializable {
     public GameState4() {
         this.board4 = new Board4();
         this.steps = 0;
-        this.moveHistory = new Stack<>();
+        this.moveHistory = new MoveHistory();
         this.elapsedTimeInSeconds = 0;
         this.gameWon = false;
     }
@@ -50,7 +52,7 @@ public class GameState4 implements Serializable {
         return steps;
     }
 
-    public Stack<MoveRecord4> getMoveHistory() {
+    public MoveHistory getMoveHistory() {
         return moveHistory;
     }
 
@@ -85,22 +87,23 @@ public class GameState4 implements Serializable {
 
 
     public void addMoveToHistory(MoveRecord4 record) {
-        this.moveHistory.push(record);
+        this.moveHistory.push(record.getBlockId(), record.getFromX(), record.getFromY(), record.getToX(), record.getToY());
     }
-    //把某个记录添加到Stack里面的方法
+    //把某个记录添加到栈里面的方法
 
     public MoveRecord4 popMoveFromHistory() {
-        if (!this.moveHistory.isEmpty()) {
-            return this.moveHistory.pop();
+        int move = this.moveHistory.pop();
+        if (move == MoveHistory.NONE) {
+            return null;
         }
-        return null;
+        return new MoveRecord4(MoveHistory.blockId(move), MoveHistory.fromX(move), MoveHistory.fromY(move), MoveHistory.toX(move), MoveHistory.toY(move));
     }
-    //用来移除Stack里面最上层的记录的方法
+    //用来移除栈里面最上层的记录的方法
 
     public void clearMoveHistory() {
         this.moveHistory.clear();
     }
-    //用来清除Stack里面记录的方法
+    //用来清除栈里面记录的方法
 
     public void setElapsedTimeInSeconds(int elapsedTimeInSeconds) {
         this.elapsedTimeInSeconds = elapsedTimeInSeconds;
@@ -117,6 +120,28 @@ public class GameState4 implements Serializable {
     }
 
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.board4 = (Board4) fields.get("board4", null);
+        this.steps = fields.get("steps", 0);
+        this.elapsedTimeInSeconds = fields.get("elapsedTimeInSeconds", 0);
+        this.gameWon = fields.get("gameWon", false);
+        Object history = fields.get("moveHistory", null);
+        if (history instanceof MoveHistory) {
+            this.moveHistory = (MoveHistory) history;
+        } else {
+            this.moveHistory = new MoveHistory();
+            if (history instanceof List<?> oldHistory) {
+                for (Object record : oldHistory) {
+                    if (record instanceof MoveRecord4) {
+                        addMoveToHistory((MoveRecord4) record);
+                    }
+                }
+            }
+        }
+    }
+    //读档：新存档里moveHistory就是MoveHistory；旧版本的存档里是Stack<MoveRecord4>（Stack也是List），按从早到晚的顺序一步步转过来
+
     public void resetGame() {
         this.board4 = new Board4();
         this.steps = 0;
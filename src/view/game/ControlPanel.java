@@ -8,7 +8,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 /*
-* 这个类完成了ControlPanel的构建，里面有上下左右，撤销，重置，保存，重新加载按键，且实现的它们的全部功能。
+* 这个类完成了ControlPanel的构建，里面有上下左右，撤销，重做，重置，保存，重新加载按键和"AI预判"的开关，且实现的它们的全部功能。
 * 这个类没有提供其它可用方法
  */
 public class ControlPanel extends JPanel implements ActionListener {
@@ -19,10 +19,14 @@ public class ControlPanel extends JPanel implements ActionListener {
     //但是又创建一个GameFrame显得逻辑混乱，但是只需要在最终创建controlPanel时传入GameFrame的参数用this即可完美化解循环嵌套
 
     private JButton upButton, downButton, leftButton, rightButton;
-    private JButton undoButton, resetButton;
+    private JButton undoButton, redoButton, resetButton;
     private JButton saveButton, loadButton;
     //这里创建了游戏中的所有Button
     private JButton aiSolveButton;
+    private JCheckBox hintPrefetchCheckBox;
+    //勾上以后每走一步AI都会在后台提前算好解法，默认不勾
+    private JCheckBox randomStartCheckBox;
+    //勾上以后Reset开的是一局随机的新布局（见GameFrame.handleReset()），默认不勾
 
     public ControlPanel(GameFrame frame) {
         this.mainFrame = frame;
@@ -54,11 +58,14 @@ public class ControlPanel extends JPanel implements ActionListener {
         leftButton = new JButton("← (A)");
         rightButton = new JButton("→ (D)");
         undoButton = new JButton("Undo");
+        redoButton = new JButton("Redo");
         resetButton = new JButton("Reset");
         saveButton = new JButton("Save");
         loadButton = new JButton("Load");
         // 创建按钮
         aiSolveButton = new JButton("AI");
+        hintPrefetchCheckBox = new JCheckBox("AI预判");
+        randomStartCheckBox = new JCheckBox("随机开局");
 
         // 上按钮 (第0行，第1列)
         gbc.gridx = 1;
@@ -102,24 +109,51 @@ public class ControlPanel extends JPanel implements ActionListener {
         gbc.gridy = 2;
         add(loadButton, gbc);
 
+        // 重做按钮 (第2行，第4列)
+        gbc.gridx = 4;
+        gbc.gridy = 2;
+        add(redoButton, gbc);
+
         gbc.gridy = 3; // 放在下一行
         gbc.gridx = 0;
-        gbc.gridwidth = 4; // 让它横跨4列
+        gbc.gridwidth = 5; // 让它横跨5列
         gbc.anchor = GridBagConstraints.CENTER; // 居中
         add(aiSolveButton, gbc);
         gbc.gridwidth = 1; // 重置gridwidth
 
 
+        // AI预判开关 (第4行，横跨所有列)
+        gbc.gridx = 0;
+        gbc.gridy = 4;
+        gbc.gridwidth = 5;
+        gbc.anchor = GridBagConstraints.CENTER;
+        add(hintPrefetchCheckBox, gbc);
+        gbc.gridwidth = 1;
+
+        // 随机开局开关 (第5行，横跨所有列)
+        gbc.gridx = 0;
+        gbc.gridy = 5;
+        gbc.gridwidth = 5;
+        gbc.anchor = GridBagConstraints.CENTER;
+        add(randomStartCheckBox, gbc);
+        gbc.gridwidth = 1;
+
         upButton.addActionListener(this);
         downButton.addActionListener(this);
         leftButton.addActionListener(this);
         rightButton.addActionListener(this);
         undoButton.addActionListener(this);
+        redoButton.addActionListener(this);
         resetButton.addActionListener(this);
         saveButton.addActionListener(this);
         loadButton.addActionListener(this);
         // 为所有按钮添加动作监听器
         aiSolveButton.addActionListener(this);
+        hintPrefetchCheckBox.addActionListener(this);
+    }
+
+    public boolean isRandomStartSelected() {
+        return randomStartCheckBox.isSelected();
     }
 
 
@@ -138,6 +172,8 @@ public class ControlPanel extends JPanel implements ActionListener {
             handleMovement(Direction.RIGHT);
         } else if (source == undoButton) {
             mainFrame.handleUndo();
+        } else if (source == redoButton) {
+            mainFrame.handleRedo();
         } else if (source == resetButton) {
             mainFrame.handleReset();
         } else if (source == saveButton) {
@@ -146,6 +182,8 @@ public class ControlPanel extends JPanel implements ActionListener {
             mainFrame.handleLoad();
         }else if (source == aiSolveButton) {
             mainFrame.handleAISolve();
+        } else if (source == hintPrefetchCheckBox) {
+            mainFrame.setHintPrefetchEnabled(hintPrefetchCheckBox.isSelected());
         }
         mainFrame.requestFocusInWindow();
 
@@ -158,6 +196,7 @@ public class ControlPanel extends JPanel implements ActionListener {
         leftButton.setEnabled(enabled);
         rightButton.setEnabled(enabled);
         undoButton.setEnabled(enabled);
+        redoButton.setEnabled(enabled);
         resetButton.setEnabled(enabled);
         saveButton.setEnabled(enabled);
         loadButton.setEnabled(enabled);
@@ -167,6 +206,14 @@ public class ControlPanel extends JPanel implements ActionListener {
     }
     // 这个方法的增加是为了在实现ai功能时，所有按键是禁用的，保证不会干扰ai功能的进行
 
+    public void setAICancelMode(boolean cancelMode) {
+        if (aiSolveButton != null) {
+            aiSolveButton.setText(cancelMode ? "取消AI" : "AI");
+            aiSolveButton.setEnabled(cancelMode);
+        }
+    }
+    // AI在后台计算时，AI按钮变成"取消AI"并且保持可以点击，再点一次就会取消这次求解；计算结束后变回"AI"（先保持禁用，由setAllButtonsEnabled()恢复）
+
     private void handleMovement(Direction direction) {
         // 如果动画正在进行，忽略移动操作
         if (mainFrame.getGamePanel().isAnimating()) {
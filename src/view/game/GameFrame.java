@@ -21,6 +21,7 @@ import java.awt.event.WindowEvent;
 * 1.refreshGameView()，整体更新整个JFrame，包括游戏界面和目前状态
 * 2.checkAndShowWinDialog()检测是否胜利
 * 3.handleUndo()撤销上一步以后的更新游戏界面
+* 3.5.handleRedo()重做刚撤销的那一步以后的更新游戏界面
 * 4.handleReset()重置以后的更新游戏界面
 * 5.还需继续完成的部分：（1）handleSave()和handleLoad()还没写完，后续完成保存和重载逻辑以后需要重新写
 *                    （2）checkAndShowWinDialog()胜利界面太丑了，看看队友有没有什么好的设计
@@ -52,6 +53,16 @@ public class GameFrame extends JFrame {
 
     private boolean isAISolving = false;
     // 标记当前是否在进行ai解题
+    private SearchMonitor aiMonitor;
+    // AI还在后台计算时不为null，用来取消这次求解
+    private static final int RANDOM_START_MIN_DISTANCE = 40;
+    private static final int RANDOM_START_MAX_DISTANCE = 60;
+    // 随机开局的难度范围（按格计的最少步数），挑布局只是查残局库，不用等
+    private final HintPrefetcher<List<MoveRecord>> hintPrefetcher = HintPrefetcher.forMoves(new AISolver(SearchMode.SLIDING)::solve);
+    // 打开"AI预判"以后，每走一步就在后台提前算好当前局面的解法，点AI时直接用，见HintPrefetcher
+    private static final long AI_TIME_LIMIT_MILLIS = 60000;
+    private static final long AI_STATE_LIMIT = 50000000L;
+    // 一次AI求解最多算60秒、最多处理五千万个状态，超过了就停下来，防止自己摆的复杂棋盘把CPU和内存占满
     private Timer animationTimer;
     // 用来控制解题思路播放的一个计时器
     private List<MoveRecord> solutionMoves;
@@ -69,6 +80,8 @@ public class GameFrame extends JFrame {
     public GameFrame() {
         gameLogic = new GameLogic();
         //new出来的全部都是初始状态的"横刀立马"图
+        Tablebase.preloadDefault();
+        //在后台提前准备好AI用的残局库，第一次点AI时就不用再等
         setTitle("Klotski Puzzle");
         setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         //这意味着当用户点击 'X' 时，Swing 不会自动做任何事。
@@ -279,12 +292,28 @@ public class GameFrame extends JFrame {
         //更新状态栏里面的状态
         this.requestFocusInWindow();
         //确保窗口能够进行下一次操作
+        scheduleHintPrefetch();
+        //棋盘变了，让后台重新预判（没打开"AI预判"时什么都不做）
     }
     //这个方法非常重要，每当你进行了一次移动都要引用一次这个方法来更新游戏界面和状态栏里面的状态
 
+    public void setHintPrefetchEnabled(boolean enabled) {
+        hintPrefetcher.setEnabled(enabled);
+        scheduleHintPrefetch();
+    }
+    //控制面板上"AI预判"的开关，打开时马上开始预判当前局面
+
+    private void scheduleHintPrefetch() {
+        if (!isAISolving && !gameLogic.getGameState().isGameWon()) {
+            hintPrefetcher.schedule(gameLogic.getSnapshot());
+        }
+    }
+    //AI演示的时候棋盘也在变，但这时不需要预判
+
 
     private void updateStatus() {
         statusPanel.updateStatus(gameLogic.getGameState().getSteps(),
+                gameLogic.getGameState().getSlideMoves(),
                 gameLogic.getGameState().getElapsedTimeInSeconds());
     }
     //这个方法别的地方用不到，只是在这个类当中方便用来写状态栏状态的
@@ -323,21 +352,44 @@ public class GameFrame extends JFrame {
     }
     //每次撤销操作以后需要引用一次这个方法来更新整个JFrame
 
+    public void handleRedo() {
+        // 如果动画正在进行，忽略重做操作
+        if (gamePanel.isAnimating()) {
+            return;
+        }
+
+        boolean redoSuccess = gameLogic.redoMove();
+        if (redoSuccess) {
+            refreshGameView();
+            checkAndShowWinDialog();
+        }
+    }
+    //重做以后也可能正好走到终点，所以还要检查一次胜利
+
     public void handleReset() {
         // 如果动画正在进行，取消所有动画
         if (gamePanel.isAnimating()) {
             gamePanel.cancelAnimations();
         }
         
-        gameLogic.resetGame();
+        boolean fellBack = controlPanel.isRandomStartSelected()
+                && !gameLogic.newRandomGame(RANDOM_START_MIN_DISTANCE, RANDOM_START_MAX_DISTANCE);
+        if (!controlPanel.isRandomStartSelected()) {
+            gameLogic.resetGame();
+        }
         gameTimer.restart();
         if (autoSaveTimer != null) {
             autoSaveTimer.restart();
         }
         // 重置游戏时也重启自动保存
         refreshGameView();
+        if (fellBack) {
+            JOptionPane.showMessageDialog(this, "随机布局要用的残局库还在后台准备中（第一次启动时要先生成），这一局先用默认的开局。",
+                    "随机开局", JOptionPane.INFORMATION_MESSAGE);
+        }
     }
-    //每次重置操作以后需要引用一次这个方法来更新整个JFrame
+    //每次重置操作以后需要引用一次这个方法来更新整个JFrame；勾上"随机开局"时换成一局离胜利RANDOM_START_MIN_DISTANCE到RANDOM_START_MAX_DISTANCE步的随机布局，
+    //残局库还没准备好时用默认的开局，并告诉玩家
 
     public void handleSave() {
         JFileChooser fileChooser = new JFileChooser();
@@ -488,6 +540,10 @@ public class GameFrame extends JFrame {
     public void handleAISolve() {
         // 检查 AI 是否已在运行，防止重复启动
         if (isAISolving) {
+            if (aiMonitor != null) {
+                aiMonitor.cancel();
+                return; // AI还在后台计算时，AI按钮就是"取消AI"按钮，搜索很快就会停下来，然后由done()恢复界面
+            }
             JOptionPane.showMessageDialog(this, "AI 正在计算中，请稍候...", "AI 忙碌", JOptionPane.INFORMATION_MESSAGE);
             return; // 如果已在运行，则不执行任何操作
         }
@@ -497,9 +553,25 @@ public class GameFrame extends JFrame {
             return; // 如果已胜利，则不执行任何操作
         }
         // 标记 AI 开始运行
+        List<MoveRecord> prefetched = hintPrefetcher.getCached(gameLogic.getSnapshot());
+        hintPrefetcher.cancel();
+        // 玩家自己点了AI，后台的预判就不用再算了，免得两边抢CPU
+        if (prefetched != null) {
+            isAISolving = true;
+            controlPanel.setAllButtonsEnabled(false);
+            System.out.println("AI: 这个局面已经在后台预判好了，共 " + prefetched.size() + " 步，直接演示。");
+            animateSolution(prefetched);
+            return;
+        }
+
         isAISolving = true;
         // 禁用控制面板上的所有按钮，防止用户在 AI 运行时进行其他操作
         controlPanel.setAllButtonsEnabled(false); // 假设 ControlPanel 中有 setAllButtonsEnabled 方法
+        controlPanel.setAICancelMode(true); // 只留下AI按钮，用来取消
+        aiMonitor = new SearchMonitor(AI_TIME_LIMIT_MILLIS, AI_STATE_LIMIT);
+        final SearchMonitor monitor = aiMonitor;
+        final BoardSnapshot snapshotForAI = gameLogic.getSnapshot();
+        // 在界面线程里拿到当前棋盘的快照，快照不会再变，后台线程直接读它，不用深拷贝GameState
         System.out.println("AI: 请求已接收，开始准备求解...");
 
 
@@ -520,13 +592,13 @@ public class GameFrame extends JFrame {
                 publish("AI 开始求解..."); // 发送一个进度消息
                 startTime = System.currentTimeMillis(); // 记录开始时间
 
-                AISolver solver = new AISolver(); // 创建AI求解器实例
-                // 非常重要：为AI创建一个当前游戏状态的深拷贝！
-                // 这样AI的计算不会影响到当前玩家正在看到和操作的游戏状态。
-                // 这里依赖于 GameState 类中已正确实现拷贝构造函数。
-                GameState currentStateForAI = new GameState(gameLogic.getGameState()); //
+                AISolver solver = new AISolver(SearchMode.SLIDING); // 创建AI求解器实例，按滑动次数求最短解，演示起来步数少得多
 
-                List<MoveRecord> solution = solver.solve(currentStateForAI); // 调用AI的核心求解方法
+                monitor.setProgressListener((states, statesPerSecond, frontierSize, depth) ->
+                        publish(String.format("AI 计算中：已处理 %d 个状态（%d 个/秒），队列 %d，深度 %d",
+                                states, statesPerSecond, frontierSize, depth)));
+                // 搜索线程大约每隔0.25秒报告一次进度，通过publish交给process在界面上显示
+                List<MoveRecord> solution = solver.solveAsync(snapshotForAI, monitor).get(); // 调用AI的核心求解方法
 
                 long endTime = System.currentTimeMillis(); // 记录结束时间
                 publish(String.format("AI 求解耗时: %.2f 秒", (endTime - startTime) / 1000.0)); // 发送耗时信息
@@ -540,11 +612,17 @@ public class GameFrame extends JFrame {
                 for (String message : chunks) {
                     System.out.println(message);
                 }
+                if (!chunks.isEmpty()) {
+                    statusPanel.setAIMessage(chunks.get(chunks.size() - 1)); // 状态栏上只显示最新的一条
+                }
             }
 
 
             @Override
             protected void done() {
+                aiMonitor = null;
+                controlPanel.setAICancelMode(false);
+                statusPanel.setAIMessage(null);
                 try {
                     // 调用 get() 方法获取 doInBackground() 的返回值 (即解题路径)
                     // 注意: get() 方法可能会抛出 InterruptedException 或 ExecutionException
@@ -555,6 +633,14 @@ public class GameFrame extends JFrame {
                         publish("AI 找到解法，共 " + solution.size() + " 步。准备演示...");
                         animateSolution(solution); // 调用方法开始动画演示解题步骤
                         // 动画开始后，按钮的重新启用将由 animateSolution 的完成逻辑处理
+                    } else if (monitor.isCancelled()) {
+                        // 玩家自己取消的，不需要再弹窗
+                        System.out.println("AI 求解已取消。");
+                        finishAISession();
+                    } else if (monitor.isStopped()) {
+                        // 超出了时间、状态数量或者内存的预算
+                        JOptionPane.showMessageDialog(GameFrame.this, "AI 在限定的预算内没有找到解法（" + monitor.getStopReason() + "）。", "AI 求解结果", JOptionPane.INFORMATION_MESSAGE);
+                        finishAISession();
                     } else {
                         // 如果没有找到解法 (solution 为 null 或为空)
                         publish("AI 未能找到解法或被中断。");
@@ -697,6 +783,11 @@ public class GameFrame extends JFrame {
                             
                             // 准备播放下一步动画
                             currentMoveIndex++;
+                            // 同一个棋子接着滑的那几格紧接着播放，一次滑动只停顿一次
+                            boolean sameSlide = currentMoveIndex < solutionMoves.size()
+                                    && continuesSlide(move, solutionMoves.get(currentMoveIndex));
+                            animationTimer.setInitialDelay(sameSlide ? 0 : delay);
+                            animationTimer.restart();
                         } else {
                             // 理论上，AI找到的路径中的每一步都应该是合法的，所以这里不应该执行到
                             // 但作为防御性编程，如果发生错误，则停止动画并报告
@@ -719,6 +810,12 @@ public class GameFrame extends JFrame {
     }
     //这个方法是实现了每0.5秒按照ai得到的答案完成一步向着答案的移动
 
+    private static boolean continuesSlide(MoveRecord previous, MoveRecord next) {
+        return previous.getBlockId() == next.getBlockId()
+                && previous.getToX() == next.getFromX() && previous.getToY() == next.getFromY();
+    }
+    //next是不是同一个棋子接着previous继续滑（和MoveHistory.continues()一样）
+
 
     private void finishAISession() {
         // 重新启用控制面板上的所有按钮
@@ -773,6 +870,7 @@ public class GameFrame extends JFrame {
 
     @Override
     public void dispose() {
+        hintPrefetcher.shutdown();
         if (animationTimer != null && animationTimer.isRunning()) {
             animationTimer.stop();
         }
@@ -7,12 +7,15 @@ import java.awt.*;
 * 1.这个类是最终的JFrame上表示游戏状态的JPanel, 有stepsLabel以及timeLabel这两个标签，并且设置好了它们的字体和位置
 * 2.这个类提供了一个好用的方法，即updateStatus(int steps, long totalSeconds)，
 * 而且这两个变量都是在前面的程序里面就实现了自动的更新了的，后面再用时只需要传入目前的数据即可
+* 3.setAIMessage()用来在状态栏上显示AI求解的进度
  */
 public class StatusPanel extends JPanel {
 
     private JLabel stepsLabel;
     private JLabel timeLabel;
     //在状态栏准备添加两个JLabel，一个是表示步数的，一个是计时器这个Label
+    private JLabel aiLabel;
+    //AI求解时显示进度的Label，平时是空的
 
     public StatusPanel() {
         setLayout(new FlowLayout(FlowLayout.CENTER, 20, 5));
@@ -31,6 +34,10 @@ public class StatusPanel extends JPanel {
 
         add(stepsLabel);
         add(timeLabel);
+
+        aiLabel = new JLabel("");
+        aiLabel.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        add(aiLabel);
     }
 
     public void updateStatus(int steps, long totalSeconds) {
@@ -38,4 +45,15 @@ public class StatusPanel extends JPanel {
         timeLabel.setText("Timer: " + GameFrame.formatTime(totalSeconds));
     }
 
+    public void updateStatus(int steps, int slideMoves, long totalSeconds) {
+        stepsLabel.setText("Steps: " + steps + " (Moves: " + slideMoves + ")");
+        timeLabel.setText("Timer: " + GameFrame.formatTime(totalSeconds));
+    }
+    //Steps按格数，Moves按"一个棋子连续滑动任意几格算一步"数
+
+    public void setAIMessage(String message) {
+        aiLabel.setText(message == null ? "" : message);
+    }
+    //显示AI求解的进度，传null或者空字符串就清空
+
 }
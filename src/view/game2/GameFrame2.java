@@ -1,6 +1,10 @@
 package view.game2;
 
 import controller2.*;
+import controller.BoardSnapshot;
+import controller.HintPrefetcher;
+import controller.SearchMonitor;
+import controller.Tablebase;
 import view.game.MouseTrailLayer;
 import view.frontend.resourses.VictoryFrame;
 
@@ -15,6 +19,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.File;
 import controller2.*;
 import java.util.List;
+import java.util.Objects;
 import javax.swing.Timer;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
@@ -60,6 +65,17 @@ public class GameFrame2 extends JFrame {
     //在文件过滤器中显示的描述，方便后面在实现load时查找自己的游戏文件
 
     private boolean isAISolving = false;
+    private SearchMonitor aiMonitor;
+    // AI还在后台计算时不为null，用来取消这次求解
+    private final HintPrefetcher<SkillPlan2> hintPrefetcher = new HintPrefetcher<>((snapshot, monitor) ->
+            planWithSkills(snapshot, gameLogic2.getTeleportPreview(), monitor));
+    // 打开"AI预判"以后，每走一步就在后台提前算好当前局面的技能方案（和点AI时一样考虑炸弹和大挪移），点AI时直接用，见HintPrefetcher
+    private static final int RANDOM_START_MIN_DISTANCE = 40;
+    private static final int RANDOM_START_MAX_DISTANCE = 60;
+    // 随机开局的难度范围（按格计的最少步数），挑布局只是查残局库，不用等
+    private static final long AI_TIME_LIMIT_MILLIS = 60000;
+    private static final long AI_STATE_LIMIT = 50000000L;
+    // 一次AI求解最多算60秒、最多处理五千万个状态，超过了就停下来，防止自己摆的复杂棋盘把CPU和内存占满
     private Timer animationTimer;
     private List<MoveRecord2> solutionMoves;
     private int currentMoveIndex;
@@ -80,6 +96,8 @@ public class GameFrame2 extends JFrame {
     public GameFrame2() {
         gameLogic2 = new GameLogic2();
         //new出来的全部都是初始状态的"横刀立马"图
+        Tablebase.preloadDefault();
+        //在后台提前准备好AI用的残局库，第一次点AI时就不用再等
         setTitle("Klotski Puzzle");
         setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         //这意味着当用户点击 'X' 时，Swing 不会自动做任何事。
@@ -296,9 +314,24 @@ public class GameFrame2 extends JFrame {
         //更新状态栏里面的状态
         this.requestFocusInWindow();
         //确保窗口能够进行下一次操作
+        scheduleHintPrefetch();
+        //棋盘变了，让后台重新预判（没打开"AI预判"时什么都不做）
     }
     //这个方法非常重要，每当你进行了一次移动都要引用一次这个方法来更新游戏界面和状态栏里面的状态
 
+    public void setHintPrefetchEnabled(boolean enabled) {
+        hintPrefetcher.setEnabled(enabled);
+        scheduleHintPrefetch();
+    }
+    //控制面板上"AI预判"的开关，打开时马上开始预判当前局面
+
+    private void scheduleHintPrefetch() {
+        if (!isAISolving && !gameLogic2.getGameState().isGameWon()) {
+            hintPrefetcher.schedule(gameLogic2.getSnapshot());
+        }
+    }
+    //AI演示的时候棋盘也在变，但这时不需要预判
+
 
     private void updateStatus() {
         statusPanel2.updateStatus(gameLogic2.getGameState().getSteps(),
@@ -334,11 +367,20 @@ public class GameFrame2 extends JFrame {
     //每次撤销操作以后需要引用一次这个方法来更新整个JFrame
 
     public void handleReset() {
-        gameLogic2.resetGame();
+        boolean fellBack = controlPanel2.isRandomStartSelected()
+                && !gameLogic2.newRandomGame(RANDOM_START_MIN_DISTANCE, RANDOM_START_MAX_DISTANCE);
+        if (!controlPanel2.isRandomStartSelected()) {
+            gameLogic2.resetGame();
+        }
         gameTimer.restart();
         refreshGameView();
+        if (fellBack) {
+            JOptionPane.showMessageDialog(this, "随机布局要用的残局库还在后台准备中（第一次启动时要先生成），这一局先用默认的开局。",
+                    "随机开局", JOptionPane.INFORMATION_MESSAGE);
+        }
     }
-    //每次重置操作以后需要引用一次这个方法来更新整个JFrame
+    //每次重置操作以后需要引用一次这个方法来更新整个JFrame；勾上"随机开局"时换成一局离胜利RANDOM_START_MIN_DISTANCE到RANDOM_START_MAX_DISTANCE步的随机布局，
+    //残局库还没准备好时用默认的开局，并告诉玩家
 
     public void handleSave() {
         JFileChooser fileChooser = new JFileChooser();
@@ -477,6 +519,19 @@ public class GameFrame2 extends JFrame {
             JOptionPane.showMessageDialog(this, "AI正在运行，请稍后操作。", "提示", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
+        playTeleport(() -> {
+            if (gameTimer != null) { // 重启计时器
+                gameTimer.stop();
+                if (!gameLogic2.getGameState().isGameWon()) {
+                    gameTimer.start();
+                }
+            }
+            // 重新启用控制面板按钮
+            controlPanel2.setAllButtonsEnabled(true);
+        });
+    }
+
+    private void playTeleport(Runnable afterTeleport) {
         gamePanel2.cancelAnimations(); // 确保没有棋子动画在进行
         
         // 禁用控制面板按钮，防止动画播放期间再次点击
@@ -487,21 +542,15 @@ public class GameFrame2 extends JFrame {
             // 动画结束后执行实际的大挪移逻辑
             gameLogic2.teleportBoard();
             refreshGameView();
-            if (gameTimer != null) { // 重启计时器
-                gameTimer.stop();
-                if (!gameLogic2.getGameState().isGameWon()) {
-                    gameTimer.start();
-                }
-            }
-            // 重新启用控制面板按钮
-            controlPanel2.setAllButtonsEnabled(true);
             // 播放音效
             playSkillSound(TELEPORT_SOUND_PATH);
+            afterTeleport.run();
         });
         
         // 开始播放动画
         skillAnimationPanel.playAnimation(TELEPORT_ANIMATION_PATH);
     }
+    // 播大挪移的动画和音效，再真正改变棋盘；玩家点按钮和AI放技能都用它，afterTeleport在棋盘变了以后调用
 
 
     public void handleBomb() {
@@ -509,13 +558,21 @@ public class GameFrame2 extends JFrame {
             JOptionPane.showMessageDialog(this, "AI正在运行，请稍后操作。", "提示", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
-        gamePanel2.cancelAnimations(); // 确保没有棋子动画在进行
 
         // 检查"兵1"是否存在
         if (gameLogic2.getGameState().getBoard().getBlockById(GameLogic2.BOMB_TARGET_BLOCK_ID) == null) {
             JOptionPane.showMessageDialog(this, "\"炸弹\"目标（兵1）已不存在！", "炸弹", JOptionPane.WARNING_MESSAGE);
             return;
         }
+        playBomb(() -> {
+            checkAndShowWinDialog(); // 检查使用炸弹后是否获胜
+            // 重新启用控制面板按钮
+            controlPanel2.setAllButtonsEnabled(true);
+        });
+    }
+
+    private void playBomb(Runnable afterBomb) {
+        gamePanel2.cancelAnimations(); // 确保没有棋子动画在进行
         
         // 获取炸弹目标位置，用于高亮显示
         Block2 targetBlock = gameLogic2.getGameState().getBoard().getBlockById(GameLogic2.BOMB_TARGET_BLOCK_ID);
@@ -533,13 +590,10 @@ public class GameFrame2 extends JFrame {
             
             // 延迟一段时间后执行实际的炸弹逻辑，让玩家能看到高亮效果
             Timer delayTimer = new Timer(HIGHLIGHT_DURATION, e -> {
-                boolean success = gameLogic2.useBomb();
-                if (success) {
+                if (gameLogic2.useBomb()) {
                     refreshGameView();
-                    checkAndShowWinDialog(); // 检查使用炸弹后是否获胜
                 }
-                // 重新启用控制面板按钮
-                controlPanel2.setAllButtonsEnabled(true);
+                afterBomb.run();
             });
             delayTimer.setRepeats(false);
             delayTimer.start();
@@ -548,6 +602,7 @@ public class GameFrame2 extends JFrame {
         // 开始播放动画
         skillAnimationPanel.playAnimation(BOMB_ANIMATION_PATH);
     }
+    // 播炸弹的动画、高亮和音效，再真正炸掉兵1；玩家点按钮和AI放技能都用它，afterBomb在炸完以后调用（兵1已经不在时也会调用）
     
     /**
      * 高亮显示炸弹目标棋子
@@ -658,6 +713,10 @@ public class GameFrame2 extends JFrame {
 
     public void handleAISolve() {
         if (isAISolving) {
+            if (aiMonitor != null) {
+                aiMonitor.cancel(); // AI还在后台计算时，AI按钮就是"取消AI"按钮
+                return;
+            }
             JOptionPane.showMessageDialog(this, "AI 正在计算中...", "AI 忙碌", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
@@ -666,19 +725,38 @@ public class GameFrame2 extends JFrame {
             return;
         }
 
+        SkillPlan2 prefetched = hintPrefetcher.getCached(gameLogic2.getSnapshot());
+        hintPrefetcher.cancel();
+        // 玩家自己点了AI，后台的预判就不用再算了，免得两边抢CPU
+        if (prefetched != null && Objects.equals(prefetched.getTeleportTarget(), gameLogic2.getTeleportPreview())) {
+            isAISolving = true;
+            controlPanel2.setAllButtonsEnabled(false);
+            System.out.println("AI: 这个局面已经在后台预判好了，直接演示。");
+            playSkillPlan(prefetched);
+            return;
+        }
+        // 预判以后又放过大挪移时，下一次大挪移的目标已经换了，预判的方案不能再用，重新算
+
         isAISolving = true;
         controlPanel2.setAllButtonsEnabled(false); // 禁用按钮
+        controlPanel2.setAICancelMode(true); // 只留下AI按钮，用来取消
+        aiMonitor = new SearchMonitor(AI_TIME_LIMIT_MILLIS, AI_STATE_LIMIT);
+        final SearchMonitor monitor = aiMonitor;
+        final BoardSnapshot snapshotForAI = gameLogic2.getSnapshot();
+        final BoardSnapshot teleportTarget = gameLogic2.getTeleportPreview();
+        // 在界面线程里拿到当前棋盘的快照，快照不会再变，后台线程直接读它，不用深拷贝GameState
         System.out.println("AI: 请求已接收，开始求解...");
 
-        SwingWorker<List<MoveRecord2>, String> worker = new SwingWorker<List<MoveRecord2>, String>() {
+        SwingWorker<SkillPlan2, String> worker = new SwingWorker<SkillPlan2, String>() {
             @Override
-            protected List<MoveRecord2> doInBackground() throws Exception {
+            protected SkillPlan2 doInBackground() throws Exception {
                 publish("AI 开始求解...");
-                AISolver2 solver = new AISolver2();
-                GameState2 currentStateForAI = new GameState2(gameLogic2.getGameState());
-                List<MoveRecord2> solution = solver.solve(currentStateForAI);
+                monitor.setProgressListener((states, statesPerSecond, frontierSize, depth) ->
+                        publish(String.format("AI 计算中：已处理 %d 个状态（%d 个/秒），队列 %d，深度 %d",
+                                states, statesPerSecond, frontierSize, depth)));
+                SkillPlan2 plan = planWithSkills(snapshotForAI, teleportTarget, monitor);
                 publish("AI 求解完成。");
-                return solution;
+                return plan;
             }
 
             @Override
@@ -686,15 +764,26 @@ public class GameFrame2 extends JFrame {
                 for (String message : chunks) {
                     System.out.println(message); // 在控制台显示进度
                 }
+                if (!chunks.isEmpty()) {
+                    statusPanel2.setAIMessage(chunks.get(chunks.size() - 1)); // 状态栏上只显示最新的一条
+                }
             }
 
             @Override
             protected void done() {
+                aiMonitor = null;
+                controlPanel2.setAICancelMode(false);
+                statusPanel2.setAIMessage(null);
                 try {
-                    List<MoveRecord2> solution = get();
-                    if (solution != null && !solution.isEmpty()) {
-                        System.out.println("AI 找到解法，共 " + solution.size() + " 步。准备演示...");
-                        animateSolution(solution);
+                    SkillPlan2 plan = get();
+                    if (plan != null) {
+                        playSkillPlan(plan);
+                    } else if (monitor.isCancelled()) {
+                        System.out.println("AI 求解已取消。");
+                        finishAISession();
+                    } else if (monitor.isStopped()) {
+                        JOptionPane.showMessageDialog(GameFrame2.this, "AI 在限定的预算内没有找到解法（" + monitor.getStopReason() + "）。", "AI 结果", JOptionPane.INFORMATION_MESSAGE);
+                        finishAISession();
                     } else {
                         JOptionPane.showMessageDialog(GameFrame2.this, "AI 未能找到解法。", "AI 结果", JOptionPane.INFORMATION_MESSAGE);
                         finishAISession();
@@ -710,6 +799,63 @@ public class GameFrame2 extends JFrame {
         worker.execute();
     }
 
+    private SkillPlan2 planWithSkills(BoardSnapshot snapshot, BoardSnapshot teleportTarget, SearchMonitor monitor) {
+        int bombUses = snapshot.contains(GameLogic2.BOMB_TARGET_BLOCK_ID) ? 1 : 0;
+        return new AISolver2().solveWithSkills(snapshot, teleportTarget, bombUses, 1, monitor);
+    }
+    // 炸弹和大挪移各考虑放一次，看放技能能不能比直接走更快；点AI和后台预判都用它，在后台线程里调用
+
+    private void playSkillPlan(SkillPlan2 plan) {
+        if (plan.usesSkills() && confirmSkillPlan(plan)) {
+            System.out.println("AI 找到解法：先放 " + plan.getSkills() + "，再走 " + plan.getMoves().size() + " 步。准备演示...");
+            fireSkills(plan.getSkills(), 0, () -> {
+                if (plan.getMoves().isEmpty()) {
+                    finishAISession();
+                    checkAndShowWinDialog(); // 放完技能就直接赢了
+                } else {
+                    animateSolution(plan.getMoves());
+                }
+            });
+        } else if (plan.getPlainMoves() != null && !plan.getPlainMoves().isEmpty()) {
+            System.out.println("AI 找到解法，共 " + plan.getPlainMoves().size() + " 步。准备演示...");
+            animateSolution(plan.getPlainMoves());
+        } else {
+            JOptionPane.showMessageDialog(this, "不放技能时 AI 未能找到解法。", "AI 结果", JOptionPane.INFORMATION_MESSAGE);
+            finishAISession();
+        }
+    }
+    // 按AI的方案演示：放技能更快时先问玩家要不要放，不放就演示不用技能的解法
+
+    private boolean confirmSkillPlan(SkillPlan2 plan) {
+        StringBuilder skills = new StringBuilder();
+        for (SkillPlan2.Skill skill : plan.getSkills()) {
+            if (skills.length() > 0) {
+                skills.append("，再");
+            }
+            skills.append(skill == SkillPlan2.Skill.BOMB ? "“炸弹”" : "“大挪移”");
+        }
+        String plain = plan.getPlainMoves() == null ? "不放技能无法获胜" : "不放技能需要 " + plan.getPlainMoves().size() + " 步";
+        int choice = JOptionPane.showConfirmDialog(this,
+                "AI 建议先使用" + skills + "，之后只需 " + plan.getMoves().size() + " 步（" + plain + "）。\n是否使用技能？",
+                "AI 建议", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+        return choice == JOptionPane.YES_OPTION || plan.getPlainMoves() == null;
+    }
+    // 让玩家决定要不要照着AI的建议放技能；不放技能根本赢不了时，不管选什么都按放技能的方案演示
+
+    private void fireSkills(List<SkillPlan2.Skill> skills, int index, Runnable afterSkills) {
+        if (index == skills.size()) {
+            afterSkills.run();
+            return;
+        }
+        Runnable next = () -> fireSkills(skills, index + 1, afterSkills);
+        if (skills.get(index) == SkillPlan2.Skill.BOMB) {
+            playBomb(next);
+        } else {
+            playTeleport(next);
+        }
+    }
+    // 按AI给的顺序放技能，和玩家自己点技能按钮一样播动画和音效，上一个技能的动画放完才放下一个，全部放完以后调用afterSkills
+
     private void animateSolution(List<MoveRecord2> solution) {
         if (solution == null || solution.isEmpty()) {
             finishAISession();
@@ -806,6 +952,7 @@ public class GameFrame2 extends JFrame {
 
     @Override
     public void dispose() {
+        hintPrefetcher.shutdown();
         if (animationTimer != null && animationTimer.isRunning()) {
             animationTimer.stop();
         }
@@ -8,7 +8,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 /*
-* 这个类完成了ControlPanel的构建，里面有上下左右，撤销，重置，保存，重新加载按键，且实现的它们的全部功能。
+* 这个类完成了ControlPanel的构建，里面有上下左右，撤销，重置，保存，重新加载按键和"AI预判"的开关，且实现的它们的全部功能。
 * 这个类没有提供其它可用方法
  */
 public class ControlPanel3 extends JPanel implements ActionListener {
@@ -23,6 +23,10 @@ public class ControlPanel3 extends JPanel implements ActionListener {
     private JButton saveButton, loadButton;
     //这里创建了游戏中的所有Button
     private JButton aiSolveButton;
+    private JCheckBox hintPrefetchCheckBox;
+    //勾上以后每走一步AI都会在后台提前算好解法，默认不勾
+    private JCheckBox randomStartCheckBox;
+    //勾上以后Reset开的是一局随机的新布局（见GameFrame3.handleReset()），默认不勾
 
     public ControlPanel3(GameFrame3 frame) {
         this.mainFrame = frame;
@@ -59,6 +63,8 @@ public class ControlPanel3 extends JPanel implements ActionListener {
         loadButton = new JButton("Load");
         // 创建按钮
         aiSolveButton = new JButton("AI");
+        hintPrefetchCheckBox = new JCheckBox("AI预判");
+        randomStartCheckBox = new JCheckBox("随机开局");
 
         // 上按钮 (第0行，第1列)
         gbc.gridx = 1;
@@ -110,6 +116,22 @@ public class ControlPanel3 extends JPanel implements ActionListener {
         add(aiSolveButton, gbc);
         gbc.gridwidth = 1; // 记得重置 gridwidth
 
+        // AI预判开关 (第4行，横跨所有列)
+        gbc.gridx = 0;
+        gbc.gridy = 4;
+        gbc.gridwidth = 4;
+        gbc.anchor = GridBagConstraints.CENTER;
+        add(hintPrefetchCheckBox, gbc);
+        gbc.gridwidth = 1;
+
+        // 随机开局开关 (第5行，横跨所有列)
+        gbc.gridx = 0;
+        gbc.gridy = 5;
+        gbc.gridwidth = 4;
+        gbc.anchor = GridBagConstraints.CENTER;
+        add(randomStartCheckBox, gbc);
+        gbc.gridwidth = 1;
+
         upButton.addActionListener(this);
         downButton.addActionListener(this);
         leftButton.addActionListener(this);
@@ -119,9 +141,14 @@ public class ControlPanel3 extends JPanel implements ActionListener {
         saveButton.addActionListener(this);
         loadButton.addActionListener(this);
         aiSolveButton.addActionListener(this);
+        hintPrefetchCheckBox.addActionListener(this);
         // 为所有按钮添加动作监听器
     }
 
+    public boolean isRandomStartSelected() {
+        return randomStartCheckBox.isSelected();
+    }
+
 
     @Override
     public void actionPerformed(ActionEvent e) {
@@ -146,6 +173,8 @@ public class ControlPanel3 extends JPanel implements ActionListener {
             mainFrame.handleLoad();
         }else if (source == aiSolveButton) {
             mainFrame.handleAISolve(); // 调用 GameFrame3 中的新方法
+        } else if (source == hintPrefetchCheckBox) {
+            mainFrame.setHintPrefetchEnabled(hintPrefetchCheckBox.isSelected());
         }
         mainFrame.requestFocusInWindow();
     }
@@ -165,6 +194,14 @@ public class ControlPanel3 extends JPanel implements ActionListener {
         }
     }
 
+    public void setAICancelMode(boolean cancelMode) {
+        if (aiSolveButton != null) {
+            aiSolveButton.setText(cancelMode ? "取消AI" : "AI");
+            aiSolveButton.setEnabled(cancelMode);
+        }
+    }
+    // AI在后台计算时，AI按钮变成"取消AI"并且保持可以点击，再点一次就会取消这次求解；计算结束后变回"AI"（先保持禁用，由setAllButtonsEnabled()恢复）
+
 
     private void handleMovement(Direction3 direction3) {
         // 如果动画正在进行，忽略移动操作
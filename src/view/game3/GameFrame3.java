@@ -1,6 +1,11 @@
 package view.game3;
 
 import controller3.*;
+import controller.BoardSnapshot;
+import controller.HintPrefetcher;
+import controller.SearchMode;
+import controller.SearchMonitor;
+import controller.Tablebase;
 import view.game.MouseTrailLayer;
 
 import javax.swing.*;
@@ -53,6 +58,20 @@ public class GameFrame3 extends JFrame {
     private boolean timeUpDialogShown = false;
 
     private boolean isAISolving = false;
+    private SearchMonitor aiMonitor;
+    // AI还在后台计算时不为null，用来取消这次求解
+    private final HintPrefetcher<List<MoveRecord3>> hintPrefetcher = HintPrefetcher.forMoves(new AISolver3()::solve);
+    // 打开"AI预判"以后，每走一步就在后台提前算好当前局面的解法，点AI时直接用，见HintPrefetcher
+    private static final int RANDOM_START_MIN_DISTANCE = 40;
+    private static final int RANDOM_START_MAX_DISTANCE = 60;
+    // 随机开局的难度范围（按格计的最少步数），挑布局只是查残局库，不用等
+    private static final long AI_STATE_LIMIT = 50000000L;
+    // 一次AI求解最多处理五千万个状态，超过了就停下来，防止自己摆的复杂棋盘把CPU和内存占满
+    private static final long AI_MIN_HINT_MILLIS = 500;
+    private static final long AI_MAX_HINT_MILLIS = 5000;
+    private static final long AI_HINT_TIME_FRACTION = 30;
+    // 限时模式下倒计时不会因为AI停下来，所以AI最多只用剩余时间的三十分之一（至少0.5秒、最多5秒），
+    // 时间到了就先演示束搜索目前找到的最好的走法，见SearchMode.BEAM
     private Timer animationTimer;
     private List<MoveRecord3> solutionMoves;
     private int currentMoveIndex;
@@ -65,6 +84,8 @@ public class GameFrame3 extends JFrame {
     public GameFrame3() {
         gameLogic3 = new GameLogic3();
         //new出来的全部都是初始状态的"横刀立马"图
+        Tablebase.preloadDefault();
+        //在后台提前准备好AI用的残局库，第一次点AI时就不用再等
         setTitle("Klotski Puzzle");
         setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         //这意味着当用户点击 'X' 时，Swing 不会自动做任何事。
@@ -279,9 +300,24 @@ public class GameFrame3 extends JFrame {
         //更新状态栏里面的状态
         this.requestFocusInWindow();
         //确保窗口能够进行下一次操作
+        scheduleHintPrefetch();
+        //棋盘变了，让后台重新预判（没打开"AI预判"时什么都不做）
     }
     //这个方法非常重要，每当你进行了一次移动都要引用一次这个方法来更新游戏界面和状态栏里面的状态
 
+    public void setHintPrefetchEnabled(boolean enabled) {
+        hintPrefetcher.setEnabled(enabled);
+        scheduleHintPrefetch();
+    }
+    //控制面板上"AI预判"的开关，打开时马上开始预判当前局面
+
+    private void scheduleHintPrefetch() {
+        if (!isAISolving && !gameLogic3.getGameState().isGameWon()) {
+            hintPrefetcher.schedule(gameLogic3.getSnapshot());
+        }
+    }
+    //AI演示的时候棋盘也在变，但这时不需要预判
+
 
     private void updateStatus() {
         statusPanel3.updateStatus(gameLogic3.getGameState().getSteps(),
@@ -318,11 +354,20 @@ public class GameFrame3 extends JFrame {
     //每次撤销操作以后需要引用一次这个方法来更新整个JFrame
 
     public void handleReset() {
-        gameLogic3.resetGame();
+        boolean fellBack = controlPanel3.isRandomStartSelected()
+                && !gameLogic3.newRandomGame(RANDOM_START_MIN_DISTANCE, RANDOM_START_MAX_DISTANCE);
+        if (!controlPanel3.isRandomStartSelected()) {
+            gameLogic3.resetGame();
+        }
         gameTimer.restart();
         refreshGameView();
+        if (fellBack) {
+            JOptionPane.showMessageDialog(this, "随机布局要用的残局库还在后台准备中（第一次启动时要先生成），这一局先用默认的开局。",
+                    "随机开局", JOptionPane.INFORMATION_MESSAGE);
+        }
     }
-    //每次重置操作以后需要引用一次这个方法来更新整个JFrame
+    //每次重置操作以后需要引用一次这个方法来更新整个JFrame；勾上"随机开局"时换成一局离胜利RANDOM_START_MIN_DISTANCE到RANDOM_START_MAX_DISTANCE步的随机布局，
+    //残局库还没准备好时用默认的开局，并告诉玩家
 
     public void handleSave() {
         JFileChooser fileChooser = new JFileChooser();
@@ -455,8 +500,18 @@ public class GameFrame3 extends JFrame {
         return gameLogic3;
     }
     //顺便写了一个gameLogic的getter以防其它开发的时候要用到GameFrame中的gameLogic
+    private long aiTimeBudgetMillis() {
+        long remainingMillis = gameLogic3.getGameState().getRemainingTimeInSecond() * 1000;
+        return Math.max(AI_MIN_HINT_MILLIS, Math.min(AI_MAX_HINT_MILLIS, remainingMillis / AI_HINT_TIME_FRACTION));
+    }
+    //根据剩下的时间算这次AI最多能用多久
+
     public void handleAISolve() {
         if (isAISolving) {
+            if (aiMonitor != null) {
+                aiMonitor.cancel(); // AI还在后台计算时，AI按钮就是"取消AI"按钮
+                return;
+            }
             JOptionPane.showMessageDialog(this, "AI 正在计算中...", "AI 忙碌", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
@@ -465,17 +520,35 @@ public class GameFrame3 extends JFrame {
             return;
         }
 
+        List<MoveRecord3> prefetched = hintPrefetcher.getCached(gameLogic3.getSnapshot());
+        hintPrefetcher.cancel();
+        // 玩家自己点了AI，后台的预判就不用再算了，免得两边抢CPU
+        if (prefetched != null) {
+            isAISolving = true;
+            controlPanel3.setAllButtonsEnabled(false);
+            System.out.println("AI: 这个局面已经在后台预判好了，共 " + prefetched.size() + " 步，直接演示。");
+            animateSolution(prefetched);
+            return;
+        }
+
         isAISolving = true;
         controlPanel3.setAllButtonsEnabled(false); // 禁用按钮
+        controlPanel3.setAICancelMode(true); // 只留下AI按钮，用来取消
+        aiMonitor = new SearchMonitor(aiTimeBudgetMillis(), AI_STATE_LIMIT);
+        final SearchMonitor monitor = aiMonitor;
+        final BoardSnapshot snapshotForAI = gameLogic3.getSnapshot();
+        // 在界面线程里拿到当前棋盘的快照，快照不会再变，后台线程直接读它，不用深拷贝GameState
         System.out.println("AI: 请求已接收，开始求解...");
 
         SwingWorker<List<MoveRecord3>, String> worker = new SwingWorker<List<MoveRecord3>, String>() {
             @Override
             protected List<MoveRecord3> doInBackground() throws Exception {
                 publish("AI 开始求解...");
-                AISolver3 solver = new AISolver3();
-                GameState3 currentStateForAI = new GameState3(gameLogic3.getGameState());
-                List<MoveRecord3> solution = solver.solve(currentStateForAI);
+                AISolver3 solver = new AISolver3(SearchMode.BEAM);
+                monitor.setProgressListener((states, statesPerSecond, frontierSize, depth) ->
+                        publish(String.format("AI 计算中：已处理 %d 个状态（%d 个/秒），队列 %d，深度 %d",
+                                states, statesPerSecond, frontierSize, depth)));
+                List<MoveRecord3> solution = solver.solveAsync(snapshotForAI, monitor).get();
                 publish("AI 求解完成。");
                 return solution;
             }
@@ -485,15 +558,30 @@ public class GameFrame3 extends JFrame {
                 for (String message : chunks) {
                     System.out.println(message); // 在控制台显示进度
                 }
+                if (!chunks.isEmpty()) {
+                    statusPanel3.setAIMessage(chunks.get(chunks.size() - 1)); // 状态栏上只显示最新的一条
+                }
             }
 
             @Override
             protected void done() {
+                aiMonitor = null;
+                controlPanel3.setAICancelMode(false);
+                statusPanel3.setAIMessage(null);
                 try {
                     List<MoveRecord3> solution = get();
                     if (solution != null && !solution.isEmpty()) {
+                        if (monitor.isStopped()) {
+                            System.out.println("AI 的时间用完了，先演示目前找到的最好的 " + solution.size() + " 步。");
+                        }
                         System.out.println("AI 找到解法，共 " + solution.size() + " 步。准备演示...");
                         animateSolution(solution);
+                    } else if (monitor.isCancelled()) {
+                        System.out.println("AI 求解已取消。");
+                        finishAISession();
+                    } else if (monitor.isStopped()) {
+                        JOptionPane.showMessageDialog(GameFrame3.this, "AI 在限定的预算内没有找到解法（" + monitor.getStopReason() + "）。", "AI 结果", JOptionPane.INFORMATION_MESSAGE);
+                        finishAISession();
                     } else {
                         JOptionPane.showMessageDialog(GameFrame3.this, "AI 未能找到解法。", "AI 结果", JOptionPane.INFORMATION_MESSAGE);
                         finishAISession();
@@ -640,6 +728,7 @@ public class GameFrame3 extends JFrame {
 
     @Override
     public void dispose() {
+        hintPrefetcher.shutdown();
         if (animationTimer != null && animationTimer.isRunning()) {
             animationTimer.stop();
         }